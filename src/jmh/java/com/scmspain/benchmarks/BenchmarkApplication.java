@@ -0,0 +1,23 @@
+package com.scmspain.benchmarks;
+
+import com.scmspain.MsFcTechTestApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    /**
+     * Start the application without the web server, on a private in-memory H2 database
+     *
+     * @param properties extra properties, as command line arguments
+     * @return running context
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(MsFcTechTestApplication.class)
+                .web(false)
+                .run(properties);
+    }
+}
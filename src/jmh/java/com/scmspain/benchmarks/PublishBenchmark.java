@@ -0,0 +1,68 @@
+package com.scmspain.benchmarks;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.services.PublishOutcome;
+import com.scmspain.services.TweetService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts per second through the single publish path, one transaction per tweet, against the batch path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PublishBenchmark {
+
+    private static final int TWEETS_PER_INVOCATION = 100;
+
+    private ConfigurableApplicationContext context;
+    private TweetService tweetService;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        tweetService = context.getBean(TweetService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TWEETS_PER_INVOCATION)
+    public void publishOneByOne() {
+        for (int i = 0; i < TWEETS_PER_INVOCATION; i++) {
+            tweetService.publishTweet("benchmark", "tweet number: " + i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TWEETS_PER_INVOCATION)
+    public List<PublishOutcome> publishBatch() {
+        List<Tweet> tweets = new ArrayList<>(TWEETS_PER_INVOCATION);
+        for (int i = 0; i < TWEETS_PER_INVOCATION; i++) {
+            tweets.add(new Tweet("benchmark", "tweet number: " + i, false, null));
+        }
+        return tweetService.publishTweets(tweets);
+    }
+}
@@ -0,0 +1,86 @@
+package com.scmspain.benchmarks;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.scmspain.entities.Tweet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of a tweet listing, as a whole list and element by element as the controller streams it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TweetSerializationBenchmark {
+
+    @Param({"1000", "100000"})
+    private int tweets;
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter tweetWriter;
+    private List<Tweet> tweetList;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        tweetWriter = objectMapper.writerFor(Tweet.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        tweetList = new ArrayList<>(tweets);
+        Date now = new Date();
+        for (int i = 0; i < tweets; i++) {
+            Tweet tweet = new Tweet("publisher" + (i % 100), "tweet number: " + i, false, now);
+            tweet.setId((long) i);
+            tweetList.add(tweet);
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws IOException {
+        return objectMapper.writeValueAsBytes(tweetList);
+    }
+
+    @Benchmark
+    public void serializeStreaming() throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(NullOutputStream.INSTANCE)) {
+            generator.writeStartArray();
+            for (Tweet tweet : tweetList) {
+                tweetWriter.writeValue(generator, tweet);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        private static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
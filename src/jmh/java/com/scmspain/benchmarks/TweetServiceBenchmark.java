@@ -0,0 +1,75 @@
+package com.scmspain.benchmarks;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.services.TweetService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TweetService publish and listing paths against H2, with a table of the given size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TweetServiceBenchmark {
+
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    @Param({"1000", "10000"})
+    private int tweets;
+
+    private ConfigurableApplicationContext context;
+    private TweetService tweetService;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        tweetService = context.getBean(TweetService.class);
+        for (int inserted = 0; inserted < tweets; inserted += INSERT_BATCH_SIZE) {
+            List<Tweet> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+            for (int i = inserted; i < Math.min(tweets, inserted + INSERT_BATCH_SIZE); i++) {
+                batch.add(new Tweet("publisher" + (i % 100), "tweet number: " + i, false, null));
+            }
+            tweetService.publishTweets(batch);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void publishTweet() {
+        tweetService.publishTweet("benchmark", "How are you? http://www.schibsted.es/");
+    }
+
+    @Benchmark
+    public List<Tweet> listAllTweets() {
+        return tweetService.listAllTweets();
+    }
+
+    @Benchmark
+    public void streamAllTweets(Blackhole blackhole) {
+        tweetService.streamAllTweets(blackhole::consume);
+    }
+}
@@ -0,0 +1,99 @@
+package com.scmspain.benchmarks;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.repositories.TweetRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TweetRepository writes and reads on the H2 tweet table against the memory-mapped log storage, with the given
+ * number of tweets stored.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TweetStorageBenchmark {
+
+    private static final int INSERT_BATCH_SIZE = 1000;
+    private static final int PAGE_SIZE = 20;
+    private static final int PUBLISHERS = 100;
+
+    @Param({"jpa", "log"})
+    private String storage;
+
+    @Param({"10000", "100000"})
+    private int tweets;
+
+    private File logDirectory;
+    private ConfigurableApplicationContext context;
+    private TweetRepository tweetRepository;
+    private long firstId;
+
+    @Setup
+    public void setUp() throws IOException {
+        logDirectory = Files.createTempDirectory("tweet-log").toFile();
+        context = BenchmarkApplication.start("--tweets.storage=" + storage,
+                "--tweets.log-storage.directory=" + logDirectory);
+        tweetRepository = context.getBean(TweetRepository.class);
+        for (int inserted = 0; inserted < tweets; inserted += INSERT_BATCH_SIZE) {
+            List<Tweet> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+            for (int i = inserted; i < Math.min(tweets, inserted + INSERT_BATCH_SIZE); i++) {
+                batch.add(new Tweet("publisher" + (i % PUBLISHERS), "tweet number: " + i, false, new Date()));
+            }
+            tweetRepository.save(batch);
+        }
+        firstId = tweetRepository.findMinId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        FileSystemUtils.deleteRecursively(logDirectory);
+    }
+
+    @Benchmark
+    public Tweet save() {
+        return tweetRepository.save(new Tweet("benchmark", "How are you? http://www.schibsted.es/", false, new Date()));
+    }
+
+    @Benchmark
+    public Tweet findOne() {
+        return tweetRepository.findOne(firstId + ThreadLocalRandom.current().nextInt(tweets));
+    }
+
+    @Benchmark
+    public List<Tweet> firstPage() {
+        return tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(new PageRequest(0, PAGE_SIZE));
+    }
+
+    @Benchmark
+    public List<Tweet> firstPageOfPublisher() {
+        return tweetRepository.findPublishedByPublisher("publisher" + ThreadLocalRandom.current().nextInt(PUBLISHERS),
+                new PageRequest(0, PAGE_SIZE));
+    }
+}
@@ -0,0 +1,59 @@
+package com.scmspain.benchmarks;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.utils.TweetValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tweet validation with the single-pass length scanner against the link regex it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TweetValidatorBenchmark {
+
+    private static final String HTTP_REGEX = "(https?)://[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|]";
+
+    @Param({
+            "How are you?",
+            "Hi everyone! We are Schibsted Spain (look at our home page http://www.schibsted.es/), we own Vibbo, InfoJobs and more",
+            "https://www.schibsted.es/ 0htGLagqj5FYMnLPyisXB3RxZSYqceoJwCHVFlk8CujBjsxbKYRh7rkfvee5wGHUGNGTnx8TKggFZEhLfF https://www.coches.net r7XqyBrdZ49YwmQw95B7geXbNEiRSp0ezGARa7e2D1laUbORScJzQj"
+    })
+    private String text;
+
+    private TweetValidator tweetValidator;
+    private Tweet tweet;
+
+    @Setup
+    public void setUp() {
+        tweetValidator = new TweetValidator();
+        tweet = new Tweet("publisher", text, false, new Date());
+    }
+
+    @Benchmark
+    public Tweet validate() {
+        tweetValidator.validate(tweet);
+        return tweet;
+    }
+
+    @Benchmark
+    public boolean regexLengthCheck() {
+        return text.replaceAll(HTTP_REGEX, "").length() >= 140;
+    }
+}
@@ -0,0 +1,252 @@
+package com.scmspain.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scmspain.MsFcTechTestApplication;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load driver.
+ * <p>
+ * Starts the application on a random port with its in-memory H2 database and sends an open-model mix of requests:
+ * each endpoint gets Poisson arrivals at its own rate whether or not earlier requests have completed. Latencies are
+ * measured from the intended send time, so a stalled service shows up in the percentiles instead of silently
+ * lowering the offered load.
+ * <p>
+ * Once the last request is sent, the report waits up to drain-timeout seconds for the ones in flight. Successes
+ * and errors are reported apart, with the latencies of the successful requests, and the requests still unfinished
+ * when the wait ends are reported as pending.
+ * <p>
+ * Settings are read from system properties, see {@link #main(String[])}.
+ */
+public class LoadTest {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Queue<Long> discardableIds = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final long durationSeconds;
+    private final long warmupSeconds;
+    private final int threads;
+    private final int seedTweets;
+    private final long drainTimeoutSeconds;
+    private final File report;
+
+    private LoadTestClient client;
+    private List<Scenario> scenarios;
+
+    LoadTest(long durationSeconds, long warmupSeconds, int threads, int seedTweets, long drainTimeoutSeconds,
+             File report) {
+        this.durationSeconds = durationSeconds;
+        this.warmupSeconds = warmupSeconds;
+        this.threads = threads;
+        this.seedTweets = seedTweets;
+        this.drainTimeoutSeconds = drainTimeoutSeconds;
+        this.report = report;
+    }
+
+    /**
+     * Supported system properties, all optional:
+     * <ul>
+     * <li>loadtest.duration: measured seconds, 60 by default</li>
+     * <li>loadtest.warmup: seconds of load before measuring, 10 by default</li>
+     * <li>loadtest.threads: client threads sending requests, 64 by default</li>
+     * <li>loadtest.seed: tweets published before the run, available to POST /discarded, 10000 by default</li>
+     * <li>loadtest.drainTimeout: seconds to wait for the requests in flight once the last one is sent, 90 by
+     * default, past the client read timeout</li>
+     * <li>loadtest.rate.publish, loadtest.rate.list, loadtest.rate.discard, loadtest.rate.listDiscarded:
+     * requests per second for POST /tweet, GET /tweet, POST /discarded and GET /discarded</li>
+     * <li>loadtest.report: report file, build/reports/loadtest/report.txt by default</li>
+     * <li>loadtest.profiles: comma separated Spring profiles to start the application with, e.g. production</li>
+     * </ul>
+     */
+    public static void main(String[] args) throws Exception {
+        LoadTest loadTest = new LoadTest(
+                Long.getLong("loadtest.duration", 60),
+                Long.getLong("loadtest.warmup", 10),
+                Integer.getInteger("loadtest.threads", 64),
+                Integer.getInteger("loadtest.seed", 10000),
+                Long.getLong("loadtest.drainTimeout", 90),
+                new File(System.getProperty("loadtest.report", "build/reports/loadtest/report.txt")));
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(MsFcTechTestApplication.class)
+                .profiles(StringUtils.commaDelimitedListToStringArray(System.getProperty("loadtest.profiles", "")))
+                .properties("server.port=0")
+                .run(args);
+        try {
+            int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+            loadTest.run("http://localhost:" + port, Arrays.asList(
+                    loadTest.publish(rate("publish", 50)),
+                    loadTest.list(rate("list", 20)),
+                    loadTest.discard(rate("discard", 5)),
+                    loadTest.listDiscarded(rate("listDiscarded", 5))));
+        } finally {
+            context.close();
+        }
+    }
+
+    private static double rate(String scenario, double defaultRate) {
+        return Double.parseDouble(System.getProperty("loadtest.rate." + scenario, Double.toString(defaultRate)));
+    }
+
+    Scenario publish(double rate) {
+        return new Scenario("POST /tweet", rate, () -> isSuccess(client.post("/tweet",
+                "{\"publisher\":\"load-test\",\"tweet\":\"Load test tweet " + sequence.incrementAndGet() + "\"}")));
+    }
+
+    Scenario list(double rate) {
+        return new Scenario("GET /tweet", rate, () -> isSuccess(client.get("/tweet")));
+    }
+
+    Scenario discard(double rate) {
+        return new Scenario("POST /discarded", rate, () -> {
+            Long id = discardableIds.poll();
+            return isSuccess(client.post("/discarded", "{\"tweet\":" + (id == null ? -1 : id) + "}"));
+        });
+    }
+
+    Scenario listDiscarded(double rate) {
+        return new Scenario("GET /discarded", rate, () -> isSuccess(client.get("/discarded")));
+    }
+
+    void run(String baseUrl, List<Scenario> scenarios) throws Exception {
+        this.client = new LoadTestClient(baseUrl);
+        this.scenarios = scenarios;
+        seed();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        List<Thread> dispatchers = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            if (scenario.getRatePerSecond() > 0) {
+                Thread dispatcher = new Thread(() -> dispatch(scenario, workers, start, measureFrom, end),
+                        "load-test-" + scenario.getName());
+                dispatcher.start();
+                dispatchers.add(dispatcher);
+            }
+        }
+        for (Thread dispatcher : dispatchers) {
+            dispatcher.join();
+        }
+        workers.shutdown();
+        if (!workers.awaitTermination(drainTimeoutSeconds, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+        scenarios.forEach(Scenario::freeze);
+
+        writeReport();
+    }
+
+    private void seed() throws IOException {
+        for (int seeded = 0; seeded < seedTweets; seeded += SEED_BATCH_SIZE) {
+            StringBuilder batch = new StringBuilder("[");
+            for (int i = seeded; i < Math.min(seedTweets, seeded + SEED_BATCH_SIZE); i++) {
+                batch.append(i == seeded ? "" : ",")
+                        .append("{\"publisher\":\"load-test\",\"tweet\":\"Seed tweet ").append(i).append("\"}");
+            }
+            batch.append(']');
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            if (!isSuccess(client.post("/tweet/batch", batch.toString(), body))) {
+                throw new IllegalStateException("Could not seed tweets: " + body.toString("UTF-8"));
+            }
+            for (JsonNode result : objectMapper.readTree(body.toByteArray())) {
+                if (result.hasNonNull("id")) {
+                    discardableIds.add(result.get("id").asLong());
+                }
+            }
+        }
+    }
+
+    private static void dispatch(Scenario scenario, ExecutorService workers, long start, long measureFrom, long end) {
+        double meanGapNanos = TimeUnit.SECONDS.toNanos(1) / scenario.getRatePerSecond();
+        long intendedStart = start;
+        while (true) {
+            intendedStart += (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanGapNanos);
+            if (intendedStart >= end) {
+                return;
+            }
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            long scheduled = intendedStart;
+            boolean measured = scheduled >= measureFrom;
+            scenario.schedule(measured);
+            workers.execute(() -> scenario.execute(scheduled, measured));
+        }
+    }
+
+    private void writeReport() throws IOException {
+        File directory = report.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        try (PrintStream out = new PrintStream(report, StandardCharsets.UTF_8.name())) {
+            out.printf("Load test run at %s with profiles %s%n", new Date(),
+                    System.getProperty("loadtest.profiles", "default"));
+            out.printf("Duration %ds after %ds warm up, %d client threads, %d seeded tweets%n%n",
+                    durationSeconds, warmupSeconds, threads, seedTweets);
+            out.printf("Latencies are of successful requests; pending requests had not finished %ds after the last"
+                    + " one was sent%n%n", drainTimeoutSeconds);
+            out.printf("%-16s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s%n", "endpoint", "offered/s",
+                    "ok/s", "errors/s", "errors", "pending", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms",
+                    "mean ms");
+            for (Scenario scenario : scenarios) {
+                Histogram latencies = scenario.getLatencies();
+                out.printf("%-16s %10.1f %10.1f %10.1f %10d %10d %10.2f %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                        scenario.getName(),
+                        scenario.getRatePerSecond(),
+                        scenario.getSuccesses() / (double) durationSeconds,
+                        scenario.getErrors() / (double) durationSeconds,
+                        scenario.getErrors(),
+                        scenario.getPending(),
+                        latencies.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                        latencies.getValueAtPercentile(90) / NANOS_PER_MILLI,
+                        latencies.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                        latencies.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+                        latencies.getMaxValue() / NANOS_PER_MILLI,
+                        latencies.getMean() / NANOS_PER_MILLI);
+            }
+            for (Scenario scenario : scenarios) {
+                out.printf("%n%s percentile distribution (ms)%n", scenario.getName());
+                if (scenario.getLatencies().getTotalCount() == 0) {
+                    out.printf("No successful requests%n");
+                } else {
+                    scenario.getLatencies().outputPercentileDistribution(out, NANOS_PER_MILLI);
+                }
+            }
+        }
+        System.out.println("Load test report written to " + report.getAbsolutePath());
+    }
+
+    private static boolean isSuccess(int status) {
+        return status >= 200 && status < 300;
+    }
+}
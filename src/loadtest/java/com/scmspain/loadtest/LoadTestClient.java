@@ -0,0 +1,80 @@
+package com.scmspain.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal HTTP client: keeps the load driver's own overhead out of the measured latencies.
+ */
+class LoadTestClient {
+
+    private final String baseUrl;
+
+    LoadTestClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * @param path request path
+     * @return status code; the body is read and dropped so the connection can be reused
+     */
+    int get(String path) throws IOException {
+        HttpURLConnection connection = open(path, "GET");
+        return drain(connection, null);
+    }
+
+    /**
+     * @param path request path
+     * @param json request body
+     * @return status code
+     */
+    int post(String path, String json) throws IOException {
+        return post(path, json, null);
+    }
+
+    /**
+     * @param path request path
+     * @param json request body
+     * @param body receives the response body, may be null
+     * @return status code
+     */
+    int post(String path, String json, ByteArrayOutputStream body) throws IOException {
+        HttpURLConnection connection = open(path, "POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        return drain(connection, body);
+    }
+
+    private HttpURLConnection open(String path, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(60000);
+        return connection;
+    }
+
+    private static int drain(HttpURLConnection connection, ByteArrayOutputStream body) throws IOException {
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+            try (InputStream stream = in) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = stream.read(buffer)) != -1) {
+                    if (body != null) {
+                        body.write(buffer, 0, read);
+                    }
+                }
+            }
+        }
+        return status;
+    }
+}
@@ -0,0 +1,128 @@
+package com.scmspain.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * One endpoint of the load mix: its arrival rate, the request it sends, and the outcome and latency of every
+ * measured request. Latencies are only recorded for successful requests, so fast failures do not flatter the
+ * percentiles.
+ */
+class Scenario {
+
+    private static final long HIGHEST_TRACKABLE_LATENCY = TimeUnit.MINUTES.toNanos(5);
+
+    private final String name;
+    private final double ratePerSecond;
+    private final Request request;
+    private final Histogram latencies = new ConcurrentHistogram(HIGHEST_TRACKABLE_LATENCY, 3);
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder pending = new LongAdder();
+    // requests record their outcome under the read lock, so none changes the results once they are frozen
+    private final ReadWriteLock recording = new ReentrantReadWriteLock();
+    private boolean frozen;
+
+    Scenario(String name, double ratePerSecond, Request request) {
+        this.name = name;
+        this.ratePerSecond = ratePerSecond;
+        this.request = request;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    Histogram getLatencies() {
+        return latencies;
+    }
+
+    long getSuccesses() {
+        return successes.sum();
+    }
+
+    long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * @return measured requests scheduled but not finished, or not finished before {@link #freeze()}
+     */
+    long getPending() {
+        return pending.sum();
+    }
+
+    /**
+     * Count a request handed to the workers, before it is executed
+     *
+     * @param measured false during the warm up
+     */
+    void schedule(boolean measured) {
+        if (measured) {
+            pending.increment();
+        }
+    }
+
+    /**
+     * Send one request and, when asked to, record its outcome
+     *
+     * @param intendedStart nanoTime at which the request was scheduled to be sent
+     * @param measured      false during the warm up
+     */
+    void execute(long intendedStart, boolean measured) {
+        boolean success;
+        try {
+            success = request.send();
+        } catch (Exception ex) {
+            success = false;
+        }
+        if (!measured) {
+            return;
+        }
+        recording.readLock().lock();
+        try {
+            if (frozen) {
+                return;
+            }
+            if (success) {
+                latencies.recordValue(Math.min(System.nanoTime() - intendedStart, HIGHEST_TRACKABLE_LATENCY));
+                successes.increment();
+            } else {
+                errors.increment();
+            }
+            pending.decrement();
+        } finally {
+            recording.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stop recording, so that requests still in flight are left pending instead of changing the results while they
+     * are reported
+     */
+    void freeze() {
+        recording.writeLock().lock();
+        try {
+            frozen = true;
+        } finally {
+            recording.writeLock().unlock();
+        }
+    }
+
+    @FunctionalInterface
+    interface Request {
+        /**
+         * @return true when the service answered with a 2xx status
+         */
+        boolean send() throws Exception;
+    }
+}
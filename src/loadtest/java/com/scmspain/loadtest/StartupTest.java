@@ -0,0 +1,155 @@
+package com.scmspain.loadtest;
+
+import com.scmspain.MsFcTechTestApplication;
+import org.springframework.util.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup time driver.
+ * <p>
+ * Starts the application in a new JVM, as a new instance would be started, and polls GET /tweet until it first
+ * succeeds. The time from launching the JVM to that first successful response is what scaling out waits for, so
+ * class loading and the JVM's own startup are included. Every run starts a fresh JVM, then the instance is stopped.
+ * <p>
+ * Settings are read from system properties, see {@link #main(String[])}.
+ */
+public class StartupTest {
+
+    private static final long POLL_INTERVAL_MILLIS = 10;
+
+    private final String classpath;
+    private final List<String> jvmArgs;
+    private final String profiles;
+    private final int runs;
+    private final long timeoutSeconds;
+    private final File report;
+
+    StartupTest(String classpath, List<String> jvmArgs, String profiles, int runs, long timeoutSeconds, File report) {
+        this.classpath = classpath;
+        this.jvmArgs = jvmArgs;
+        this.profiles = profiles;
+        this.runs = runs;
+        this.timeoutSeconds = timeoutSeconds;
+        this.report = report;
+    }
+
+    /**
+     * Supported system properties:
+     * <ul>
+     * <li>startup.classpath: class path of the application, required</li>
+     * <li>startup.runs: number of instances started one after the other, 5 by default</li>
+     * <li>startup.profiles: comma separated Spring profiles to start the application with, fast-startup by default;
+     * empty for the default configuration</li>
+     * <li>startup.jvmArgs: space separated JVM options of the application, e.g. to use a class data sharing
+     * archive</li>
+     * <li>startup.timeout: seconds to wait for the first successful response, 120 by default</li>
+     * <li>startup.report: report file, build/reports/startup/report.txt by default</li>
+     * </ul>
+     */
+    public static void main(String[] args) throws Exception {
+        String classpath = System.getProperty("startup.classpath");
+        if (!StringUtils.hasText(classpath)) {
+            throw new IllegalArgumentException("startup.classpath must be set");
+        }
+        int runs = Integer.getInteger("startup.runs", 5);
+        if (runs < 1) {
+            throw new IllegalArgumentException("startup.runs must be positive");
+        }
+        StartupTest startupTest = new StartupTest(classpath,
+                Arrays.asList(StringUtils.tokenizeToStringArray(System.getProperty("startup.jvmArgs", ""), " ")),
+                System.getProperty("startup.profiles", "fast-startup"),
+                runs,
+                Long.getLong("startup.timeout", 120),
+                new File(System.getProperty("startup.report", "build/reports/startup/report.txt")));
+        startupTest.run();
+    }
+
+    void run() throws Exception {
+        File logs = new File(report.getAbsoluteFile().getParentFile(), "logs");
+        if (!logs.isDirectory() && !logs.mkdirs()) {
+            throw new IOException("Could not create " + logs);
+        }
+        List<Long> times = new ArrayList<>(runs);
+        for (int run = 1; run <= runs; run++) {
+            times.add(startOnce(new File(logs, "run-" + run + ".log")));
+            System.out.printf("Run %d: first successful GET /tweet after %d ms%n", run, times.get(times.size() - 1));
+        }
+        writeReport(times);
+    }
+
+    /**
+     * @param log file receiving the output of the instance
+     * @return milliseconds from launching the JVM to the first successful GET /tweet
+     */
+    private long startOnce(File log) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(classpath);
+        command.add(MsFcTechTestApplication.class.getName());
+        command.add("--server.port=" + port);
+        command.add("--spring.profiles.active=" + profiles);
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log);
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            LoadTestClient client = new LoadTestClient("http://localhost:" + port);
+            long deadline = start + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("The application exited with " + process.exitValue() + ", see " + log);
+                }
+                try {
+                    int status = client.get("/tweet");
+                    if (status >= 200 && status < 300) {
+                        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    }
+                } catch (IOException notListeningYet) {
+                    // the server socket is not open yet
+                }
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+            throw new IllegalStateException("No successful GET /tweet after " + timeoutSeconds + "s, see " + log);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private void writeReport(List<Long> times) throws IOException {
+        List<Long> sorted = new ArrayList<>(times);
+        Collections.sort(sorted);
+        try (PrintStream out = new PrintStream(report, StandardCharsets.UTF_8.name())) {
+            out.printf("Startup test run at %s with profiles %s and JVM options %s%n", new Date(),
+                    profiles.isEmpty() ? "default" : profiles, jvmArgs.isEmpty() ? "none" : String.join(" ", jvmArgs));
+            out.printf("Time to first successful GET /tweet over %d runs (ms)%n%n", runs);
+            out.printf("%10s %10s %10s %10s%n", "min", "median", "max", "mean");
+            out.printf("%10d %10d %10d %10.1f%n", sorted.get(0), sorted.get(sorted.size() / 2),
+                    sorted.get(sorted.size() - 1), sorted.stream().mapToLong(Long::longValue).average().orElse(0));
+            out.printf("%nRuns: %s%n", times);
+        }
+        System.out.println("Startup report written to " + report.getAbsolutePath());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
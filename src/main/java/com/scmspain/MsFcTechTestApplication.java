@@ -1,14 +1,13 @@
 package com.scmspain;
 
 import com.scmspain.configurations.InfrastructureConfiguration;
+import com.scmspain.configurations.storage.LogStorageConfiguration;
 import org.springframework.boot.SpringApplication;
-import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
-@EnableAutoConfiguration
-@Import(InfrastructureConfiguration.class)
+@Import({InfrastructureConfiguration.class, LogStorageConfiguration.class})
 public class MsFcTechTestApplication {
     public static void main(String[] args) {
         SpringApplication.run(MsFcTechTestApplication.class, args);
@@ -0,0 +1,68 @@
+package com.scmspain.configurations.replicas;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceBuilder;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read/write splitting, enabled with tweets.replicas.urls: a comma separated list of replica JDBC urls, which
+ * share the spring.datasource credentials, driver and pool type unless tweets.replicas.username and
+ * tweets.replicas.password are set.
+ * <p>
+ * The router is built inside the only DataSource bean rather than exposed as a bean of its own: Boot initializes
+ * every DataSource bean against the primary one, which would make the two depend on each other.
+ */
+@Configuration
+@ConditionalOnProperty("tweets.replicas.urls")
+public class ReplicaRoutingConfiguration {
+
+    @Bean(destroyMethod = "close")
+    @Primary
+    public ClosingLazyConnectionDataSourceProxy dataSource(DataSourceProperties properties,
+                                                           @Value("${tweets.replicas.urls}") String[] urls,
+                                                           @Value("${tweets.replicas.username:}") String username,
+                                                           @Value("${tweets.replicas.password:}") String password,
+                                                           @Value("${tweets.replicas.validation-timeout-seconds:1}") int validationTimeoutSeconds,
+                                                           @Value("${tweets.replicas.health-check-interval-ms:5000}") long healthCheckIntervalMillis) {
+        DataSource primary = properties.initializeDataSourceBuilder().build();
+        List<DataSource> replicas = new ArrayList<>(urls.length);
+        for (String url : urls) {
+            replicas.add(DataSourceBuilder.create()
+                    .type(properties.getType())
+                    .url(url.trim())
+                    .username(username.isEmpty() ? properties.determineUsername() : username)
+                    .password(username.isEmpty() ? properties.determinePassword() : password)
+                    .build());
+        }
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primary, replicas, validationTimeoutSeconds);
+        routingDataSource.afterPropertiesSet();
+        routingDataSource.startHealthChecks(healthCheckIntervalMillis);
+        return new ClosingLazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    /**
+     * Lazy connection proxy of the router that closes it, and so its pools, when the context closes
+     */
+    public static class ClosingLazyConnectionDataSourceProxy extends LazyConnectionDataSourceProxy {
+
+        private final ReplicaRoutingDataSource routingDataSource;
+
+        ClosingLazyConnectionDataSourceProxy(ReplicaRoutingDataSource routingDataSource) {
+            super(routingDataSource);
+            this.routingDataSource = routingDataSource;
+        }
+
+        public void close() {
+            routingDataSource.close();
+        }
+    }
+}
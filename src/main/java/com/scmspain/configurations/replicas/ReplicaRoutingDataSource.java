@@ -0,0 +1,145 @@
+package com.scmspain.configurations.replicas;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ReflectionUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends connections of read-only transactions to the healthy replicas, round-robin, and everything else to the
+ * primary. When no replica is healthy, reads fall back to the primary.
+ * <p>
+ * The lookup happens when a connection is requested, so it must be wrapped in a LazyConnectionDataSourceProxy:
+ * the transaction manager opens its connection before the transaction is marked read-only.
+ * <p>
+ * It owns the pools it routes to and closes them, along with its health checks, on {@link #close()}.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica-";
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final int validationTimeoutSeconds;
+    private ScheduledExecutorService healthChecker;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, int validationTimeoutSeconds) {
+        this.primary = primary;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            this.replicas.add(new Replica(REPLICA + i, replicas.get(i)));
+            targets.put(REPLICA + i, replicas.get(i));
+        }
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        int size = replicas.size();
+        int start = next.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return replica.key;
+            }
+        }
+        return PRIMARY;
+    }
+
+    /**
+     * Check the replicas every intervalMillis from a daemon thread
+     *
+     * @param intervalMillis delay between two checks
+     */
+    public synchronized void startHealthChecks(long intervalMillis) {
+        if (healthChecker != null) {
+            return;
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkReplicas, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the health checks and close the primary and replica pools
+     */
+    public synchronized void close() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+            healthChecker = null;
+        }
+        closePool(primary);
+        replicas.forEach(replica -> closePool(replica.dataSource));
+    }
+
+    /**
+     * Validate a connection of every replica, taking failing ones out of rotation until they recover
+     */
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                healthy = connection.isValid(validationTimeoutSeconds);
+            } catch (SQLException ex) {
+                healthy = false;
+            }
+            if (healthy != replica.healthy) {
+                LOGGER.warn("Replica {} is now {}", replica.key, healthy ? "healthy" : "unhealthy");
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    /**
+     * Close a pool through its close method, which every pool type DataSourceBuilder creates has, though not all of
+     * them declare it through AutoCloseable
+     */
+    private static void closePool(DataSource pool) {
+        Method close = ReflectionUtils.findMethod(pool.getClass(), "close");
+        if (close == null) {
+            return;
+        }
+        try {
+            ReflectionUtils.invokeMethod(close, pool);
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Could not close data source {}", pool, ex);
+        }
+    }
+
+    private static final class Replica {
+        private final String key;
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+
+        private Replica(String key, DataSource dataSource) {
+            this.key = key;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.scmspain.configurations.storage;
+
+import com.scmspain.repositories.log.LogTweetRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores tweets in the memory-mapped log of tweets.log-storage.directory instead of the tweet table, enabled with
+ * tweets.storage=log. The tweet table repository is still created, but the log repository is injected wherever a
+ * TweetRepository is needed.
+ * <p>
+ * Archiving copies rows between tables with SQL, so it cannot be enabled along with the log storage.
+ */
+@Configuration
+@ConditionalOnProperty(name = "tweets.storage", havingValue = "log")
+public class LogStorageConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogStorageConfiguration.class);
+
+    @Bean
+    @Primary
+    public LogTweetRepository logTweetRepository(@Value("${tweets.log-storage.directory:data/tweet-log}") String directory,
+                                                 @Value("${tweets.log-storage.segment-size:67108864}") int segmentSize,
+                                                 @Value("${tweets.log-storage.compaction-threshold:0.5}") double compactionThreshold,
+                                                 @Value("${tweets.archive.enabled:false}") boolean archiveEnabled) {
+        if (archiveEnabled) {
+            throw new IllegalStateException("Archiving needs the tweet table, it cannot be enabled with tweets.storage=log");
+        }
+        return new LogTweetRepository(new File(directory), segmentSize, compactionThreshold);
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService logCompactor(LogTweetRepository logTweetRepository,
+                                                 @Value("${tweets.log-storage.compaction-interval-ms:60000}") long intervalMillis) {
+        ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tweet-log-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                logTweetRepository.compact();
+            } catch (RuntimeException ex) {
+                LOGGER.error("Could not compact the tweet log", ex);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return compactor;
+    }
+}
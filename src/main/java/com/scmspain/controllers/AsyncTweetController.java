@@ -0,0 +1,146 @@
+package com.scmspain.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scmspain.controllers.async.AsyncRequestExecutor;
+import com.scmspain.controllers.cache.TweetResponseCache;
+import com.scmspain.controllers.command.DiscardTweetCommand;
+import com.scmspain.controllers.command.PublishTweetCommand;
+import com.scmspain.controllers.message.DiscardResultMessage;
+import com.scmspain.controllers.message.ExceptionMessage;
+import com.scmspain.controllers.message.PublishResultMessage;
+import com.scmspain.entities.Tweet;
+import com.scmspain.services.TweetService;
+import com.scmspain.services.ratelimit.RateLimitExceededException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.CREATED;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Same endpoints as {@link TweetController}, which it replaces when tweets.async.enabled is set. Handlers that
+ * wait on the database run on the {@link AsyncRequestExecutor} pool and release the servlet thread; the full
+ * listings already stream their body asynchronously and are served as they are.
+ */
+@RestController
+@ConditionalOnProperty(name = "tweets.async.enabled", havingValue = "true")
+public class AsyncTweetController {
+
+    private TweetController delegate;
+    private AsyncRequestExecutor executor;
+
+    @Autowired
+    public AsyncTweetController(TweetService tweetService, ObjectMapper objectMapper, TweetResponseCache responseCache,
+                                AsyncRequestExecutor executor) {
+        this.delegate = new TweetController(tweetService, objectMapper, responseCache);
+        this.executor = executor;
+    }
+
+    @GetMapping(value = "/tweet", params = {"!limit", "!after", "!publisher"})
+    public ResponseEntity<StreamingResponseBody> listAllTweets(WebRequest webRequest) {
+        return delegate.listAllTweets(webRequest);
+    }
+
+    @GetMapping("/tweet")
+    public DeferredResult<ResponseEntity<List<Tweet>>> listTweets(@RequestParam(value = "limit", required = false) Integer limit,
+                                                                  @RequestParam(value = "after", required = false) String after) {
+        return executor.submit("list", () -> delegate.listTweets(limit, after));
+    }
+
+    @GetMapping(value = "/tweet", params = "publisher")
+    public DeferredResult<ResponseEntity<List<Tweet>>> listTweetsByPublisher(@RequestParam("publisher") String publisher,
+                                                                             @RequestParam(value = "limit", required = false) Integer limit,
+                                                                             @RequestParam(value = "after", required = false) String after) {
+        return executor.submit("list-by-publisher", () -> delegate.listTweetsByPublisher(publisher, limit, after));
+    }
+
+    @GetMapping(value = "/discarded", params = {"!limit", "!after"})
+    public ResponseEntity<StreamingResponseBody> listAllDiscardedTweets(WebRequest webRequest) {
+        return delegate.listAllDiscardedTweets(webRequest);
+    }
+
+    @GetMapping("/discarded")
+    public DeferredResult<ResponseEntity<List<Tweet>>> listDiscardedTweets(@RequestParam(value = "limit", required = false) Integer limit,
+                                                                           @RequestParam(value = "after", required = false) String after) {
+        return executor.submit("list-discarded", () -> delegate.listDiscardedTweets(limit, after));
+    }
+
+    @GetMapping("/search")
+    public DeferredResult<ResponseEntity<List<Tweet>>> searchTweets(@RequestParam(value = "q", required = false) String query,
+                                                                    @RequestParam(value = "publisher", required = false) String publisher,
+                                                                    @RequestParam(value = "limit", required = false) Integer limit,
+                                                                    @RequestParam(value = "after", required = false) String after) {
+        return executor.submit("search", () -> delegate.searchTweets(query, publisher, limit, after));
+    }
+
+    @PostMapping("/tweet")
+    @ResponseStatus(CREATED)
+    public DeferredResult<Void> publishTweet(@RequestBody PublishTweetCommand publishTweetCommand) {
+        return executor.submit("publish", () -> {
+            delegate.publishTweet(publishTweetCommand);
+            return null;
+        });
+    }
+
+    @PostMapping("/tweet/batch")
+    public DeferredResult<List<PublishResultMessage>> publishTweets(@RequestBody List<PublishTweetCommand> publishTweetCommands) {
+        return executor.submit("publish-batch", () -> delegate.publishTweets(publishTweetCommands));
+    }
+
+    @PostMapping("/discarded")
+    public DeferredResult<Void> discardTweet(@RequestBody DiscardTweetCommand discardTweetCommand) {
+        return executor.submit("discard", () -> {
+            delegate.discardTweet(discardTweetCommand);
+            return null;
+        });
+    }
+
+    @PostMapping("/discarded/batch")
+    public DeferredResult<List<DiscardResultMessage>> discardTweets(@RequestBody List<DiscardTweetCommand> discardTweetCommands) {
+        return executor.submit("discard-batch", () -> delegate.discardTweets(discardTweetCommands));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(BAD_REQUEST)
+    @ResponseBody
+    public ExceptionMessage invalidArgumentException(IllegalArgumentException ex) {
+        return delegate.invalidArgumentException(ex);
+    }
+
+    @ExceptionHandler(NoSuchElementException.class)
+    @ResponseStatus(BAD_REQUEST)
+    @ResponseBody
+    public Object noSucHElementException(NoSuchElementException ex) {
+        return delegate.noSucHElementException(ex);
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    @ResponseStatus(SERVICE_UNAVAILABLE)
+    @ResponseBody
+    public ExceptionMessage rejectedExecutionException(RejectedExecutionException ex) {
+        return delegate.rejectedExecutionException(ex);
+    }
+
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<ExceptionMessage> rateLimitExceededException(RateLimitExceededException ex) {
+        return delegate.rateLimitExceededException(ex);
+    }
+
+    @ExceptionHandler(TimeoutException.class)
+    @ResponseStatus(SERVICE_UNAVAILABLE)
+    @ResponseBody
+    public ExceptionMessage timeoutException(TimeoutException ex) {
+        return new ExceptionMessage(ex);
+    }
+}
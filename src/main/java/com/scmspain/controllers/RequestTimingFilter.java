@@ -0,0 +1,79 @@
+package com.scmspain.controllers;
+
+import com.scmspain.services.metrics.TimerRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Times whole requests, JSON writing included, into a timer named http.&lt;method&gt;.&lt;path pattern&gt;.
+ * Streamed responses are timed until their asynchronous processing completes.
+ */
+@Component
+public class RequestTimingFilter extends OncePerRequestFilter {
+
+    private TimerRegistry timerRegistry;
+
+    @Autowired
+    public RequestTimingFilter(TimerRegistry timerRegistry) {
+        this.timerRegistry = timerRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new CompletionListener(request, start));
+            } else {
+                record(request, start);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, long start) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        timerRegistry.timer("http." + request.getMethod() + "." + (pattern == null ? "unmapped" : pattern))
+                .record(System.nanoTime() - start);
+    }
+
+    private class CompletionListener implements AsyncListener {
+
+        private final HttpServletRequest request;
+        private final long start;
+
+        private CompletionListener(HttpServletRequest request, long start) {
+            this.request = request;
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            record(request, start);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
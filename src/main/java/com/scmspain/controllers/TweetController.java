@@ -1,37 +1,113 @@
 package com.scmspain.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.scmspain.controllers.cache.CachedListing;
+import com.scmspain.controllers.cache.TweetResponseCache;
+import com.scmspain.controllers.cache.TweetResponseCache.Listing;
 import com.scmspain.controllers.command.DiscardTweetCommand;
 import com.scmspain.controllers.command.PublishTweetCommand;
+import com.scmspain.controllers.message.DiscardResultMessage;
 import com.scmspain.controllers.message.ExceptionMessage;
+import com.scmspain.controllers.message.PublishResultMessage;
 import com.scmspain.entities.Tweet;
+import com.scmspain.services.DiscardOutcome;
+import com.scmspain.services.PublishOutcome;
+import com.scmspain.services.TweetCursor;
 import com.scmspain.services.TweetService;
+import com.scmspain.services.ratelimit.RateLimitExceededException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.CREATED;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
 
 @RestController
+@ConditionalOnProperty(name = "tweets.async.enabled", havingValue = "false", matchIfMissing = true)
 public class TweetController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int DEFAULT_PAGE_SIZE = 20;
+
     private TweetService tweetService;
+    private ObjectMapper objectMapper;
+    private ObjectWriter tweetWriter;
+    private TweetResponseCache responseCache;
 
     @Autowired
-    public TweetController(TweetService tweetService) {
+    public TweetController(TweetService tweetService, ObjectMapper objectMapper, TweetResponseCache responseCache) {
         this.tweetService = tweetService;
+        this.objectMapper = objectMapper;
+        this.responseCache = responseCache;
+        this.tweetWriter = objectMapper.writerFor(Tweet.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @GetMapping(value = "/tweet", params = {"!limit", "!after", "!publisher"})
+    public ResponseEntity<StreamingResponseBody> listAllTweets(WebRequest webRequest) {
+        return listingResponse(webRequest, Listing.PUBLISHED, tweetService::streamAllTweets);
     }
 
     @GetMapping("/tweet")
-    public List<Tweet> listAllTweets() {
-        return tweetService.listAllTweets();
+    public ResponseEntity<List<Tweet>> listTweets(@RequestParam(value = "limit", required = false) Integer limit,
+                                                  @RequestParam(value = "after", required = false) String after) {
+        int pageSize = Optional.ofNullable(limit).orElse(DEFAULT_PAGE_SIZE);
+        List<Tweet> page = tweetService.listTweets(TweetCursor.parse(after), pageSize);
+        return pageResponse(page, pageSize, Tweet::getPublicationDate);
+    }
+
+    @GetMapping(value = "/tweet", params = "publisher")
+    public ResponseEntity<List<Tweet>> listTweetsByPublisher(@RequestParam("publisher") String publisher,
+                                                             @RequestParam(value = "limit", required = false) Integer limit,
+                                                             @RequestParam(value = "after", required = false) String after) {
+        int pageSize = Optional.ofNullable(limit).orElse(DEFAULT_PAGE_SIZE);
+        List<Tweet> page = tweetService.listTweetsByPublisher(publisher, TweetCursor.parse(after), pageSize);
+        return pageResponse(page, pageSize, Tweet::getPublicationDate);
+    }
+
+    @GetMapping(value = "/discarded", params = {"!limit", "!after"})
+    public ResponseEntity<StreamingResponseBody> listAllDiscardedTweets(WebRequest webRequest) {
+        return listingResponse(webRequest, Listing.DISCARDED, tweetService::streamAllDiscardedTweets);
     }
 
     @GetMapping("/discarded")
-    public List<Tweet> listAllDiscardedTweets() {
-        return tweetService.listAllDiscardedTweets();
+    public ResponseEntity<List<Tweet>> listDiscardedTweets(@RequestParam(value = "limit", required = false) Integer limit,
+                                                           @RequestParam(value = "after", required = false) String after) {
+        int pageSize = Optional.ofNullable(limit).orElse(DEFAULT_PAGE_SIZE);
+        List<Tweet> page = tweetService.listDiscardedTweets(TweetCursor.parse(after), pageSize);
+        return pageResponse(page, pageSize, Tweet::getDiscardedDate);
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<List<Tweet>> searchTweets(@RequestParam(value = "q", required = false) String query,
+                                                    @RequestParam(value = "publisher", required = false) String publisher,
+                                                    @RequestParam(value = "limit", required = false) Integer limit,
+                                                    @RequestParam(value = "after", required = false) String after) {
+        int pageSize = Optional.ofNullable(limit).orElse(DEFAULT_PAGE_SIZE);
+        List<Tweet> page = tweetService.searchTweets(query, publisher, TweetCursor.parse(after), pageSize);
+        return pageResponse(page, pageSize, Tweet::getPublicationDate);
     }
 
     @PostMapping("/tweet")
@@ -40,11 +116,35 @@ public class TweetController {
         tweetService.publishTweet(publishTweetCommand.getPublisher(), publishTweetCommand.getTweet());
     }
 
+    @PostMapping("/tweet/batch")
+    public List<PublishResultMessage> publishTweets(@RequestBody List<PublishTweetCommand> publishTweetCommands) {
+        List<Tweet> tweets = publishTweetCommands.stream()
+                .map(command -> Optional.ofNullable(command).orElseGet(PublishTweetCommand::new))
+                .map(command -> new Tweet(command.getPublisher(), command.getTweet(), false, null))
+                .collect(Collectors.toList());
+        return tweetService.publishTweets(tweets).stream()
+                .map(TweetController::toPublishResultMessage)
+                .collect(Collectors.toList());
+    }
+
     @PostMapping("/discarded")
     public void discardTweet(@RequestBody DiscardTweetCommand discardTweetCommand) {
         tweetService.discardTweet(discardTweetCommand.getTweet());
     }
 
+    @PostMapping("/discarded/batch")
+    public List<DiscardResultMessage> discardTweets(@RequestBody List<DiscardTweetCommand> discardTweetCommands) {
+        List<Long> ids = discardTweetCommands.stream()
+                .map(command -> command == null ? null : command.getTweet())
+                .collect(Collectors.toList());
+        List<DiscardOutcome> outcomes = tweetService.discardTweets(ids);
+        List<DiscardResultMessage> results = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            results.add(new DiscardResultMessage(ids.get(i), outcomes.get(i)));
+        }
+        return results;
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     @ResponseStatus(BAD_REQUEST)
     @ResponseBody
@@ -58,4 +158,77 @@ public class TweetController {
     public Object noSucHElementException(NoSuchElementException ex) {
         return new ExceptionMessage(ex);
     }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    @ResponseStatus(SERVICE_UNAVAILABLE)
+    @ResponseBody
+    public ExceptionMessage rejectedExecutionException(RejectedExecutionException ex) {
+        return new ExceptionMessage(ex);
+    }
+
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<ExceptionMessage> rateLimitExceededException(RateLimitExceededException ex) {
+        return ResponseEntity.status(TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(new ExceptionMessage(ex));
+    }
+
+    private ResponseEntity<StreamingResponseBody> listingResponse(WebRequest webRequest, Listing listing,
+                                                                  Consumer<Consumer<Tweet>> source) {
+        if (!responseCache.isEnabled()) {
+            StreamingResponseBody streamed = outputStream -> writeListing(outputStream, source);
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(streamed);
+        }
+        CachedListing cached = responseCache.lookup(listing);
+        if (webRequest.checkNotModified(cached.getEtag())) {
+            return null;
+        }
+        byte[] body = cached.getBody();
+        if (body != null) {
+            StreamingResponseBody serialized = outputStream -> outputStream.write(body);
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).contentLength(body.length).body(serialized);
+        }
+        StreamingResponseBody captured = outputStream -> {
+            OutputStream capture = responseCache.capture(listing, cached, outputStream);
+            writeListing(capture, source);
+            capture.close();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(captured);
+    }
+
+    private void writeListing(OutputStream outputStream, Consumer<Consumer<Tweet>> source) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            generator.writeStartArray();
+            source.accept(tweet -> writeTweet(generator, tweet));
+            generator.writeEndArray();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private void writeTweet(JsonGenerator generator, Tweet tweet) {
+        try {
+            tweetWriter.writeValue(generator, tweet);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static PublishResultMessage toPublishResultMessage(PublishOutcome outcome) {
+        if (outcome.isPublished()) {
+            return new PublishResultMessage(outcome.getId(), null);
+        }
+        return new PublishResultMessage(null, new ExceptionMessage(outcome.getError()));
+    }
+
+    private static ResponseEntity<List<Tweet>> pageResponse(List<Tweet> page, int pageSize, Function<Tweet, Date> sortDate) {
+        if (page.size() < pageSize) {
+            return ResponseEntity.ok(page);
+        }
+        Tweet last = page.get(page.size() - 1);
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, TweetCursor.of(sortDate.apply(last), last.getId()).toToken())
+                .body(page);
+    }
 }
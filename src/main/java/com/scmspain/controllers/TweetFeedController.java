@@ -0,0 +1,48 @@
+package com.scmspain.controllers;
+
+import com.scmspain.controllers.feed.TweetFeedBroadcaster;
+import com.scmspain.controllers.message.ExceptionMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Server-Sent Events feed of committed publish and discard events, so clients no longer poll the listings to find
+ * out whether anything changed. Served in both sync and async modes.
+ */
+@RestController
+public class TweetFeedController {
+
+    static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+    private TweetFeedBroadcaster broadcaster;
+
+    @Autowired
+    public TweetFeedController(TweetFeedBroadcaster broadcaster) {
+        this.broadcaster = broadcaster;
+    }
+
+    @GetMapping("/feed")
+    public SseEmitter feed(@RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) Long lastEventId) {
+        return broadcaster.subscribe(lastEventId);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(BAD_REQUEST)
+    @ResponseBody
+    public ExceptionMessage invalidArgumentException(IllegalArgumentException ex) {
+        return new ExceptionMessage(ex);
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    @ResponseStatus(SERVICE_UNAVAILABLE)
+    @ResponseBody
+    public ExceptionMessage rejectedExecutionException(RejectedExecutionException ex) {
+        return new ExceptionMessage(ex);
+    }
+}
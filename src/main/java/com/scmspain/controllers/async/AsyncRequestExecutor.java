@@ -0,0 +1,135 @@
+package com.scmspain.controllers.async;
+
+import com.scmspain.services.metrics.Counter;
+import com.scmspain.services.metrics.CounterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool running the repository work of async handlers, so that servlet threads are released while
+ * requests wait on the database. At most queue-capacity requests wait for one of the threads; further ones are
+ * rejected instead of piling up. Every endpoint times out after tweets.async.endpoints.&lt;endpoint&gt;.timeout-ms,
+ * or timeout-ms when not set.
+ */
+@Component
+public class AsyncRequestExecutor implements PublicMetrics {
+
+    private static final String ENDPOINT_TIMEOUT = "tweets.async.endpoints.%s.timeout-ms";
+
+    private Counter rejected;
+    private Counter timedOut;
+    private Environment environment;
+    private boolean enabled;
+    private int threads;
+    private int queueCapacity;
+    private long timeoutMillis;
+    private ConcurrentMap<String, Long> endpointTimeouts = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    @Autowired
+    public AsyncRequestExecutor(CounterRegistry counterRegistry, Environment environment,
+                                @Value("${tweets.async.enabled:false}") boolean enabled,
+                                @Value("${tweets.async.threads:20}") int threads,
+                                @Value("${tweets.async.queue-capacity:200}") int queueCapacity,
+                                @Value("${tweets.async.timeout-ms:5000}") long timeoutMillis) {
+        if (threads < 1 || queueCapacity < 1 || timeoutMillis < 1) {
+            throw new IllegalArgumentException("Async threads, queue capacity and timeout must be positive");
+        }
+        this.rejected = counterRegistry.counter("async-rejected-requests");
+        this.timedOut = counterRegistry.counter("async-timed-out-requests");
+        this.environment = environment;
+        this.enabled = enabled;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "async-request-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Run handler work on the pool
+     *
+     * @param endpoint name of the endpoint, used to look up its timeout
+     * @param work     handler work
+     * @param <T>      handler result type
+     * @return result set when the work completes, errored when it throws or times out
+     * @throws RejectedExecutionException When the queue is full
+     */
+    public <T> DeferredResult<T> submit(String endpoint, Supplier<T> work) throws RejectedExecutionException {
+        long timeout = endpointTimeouts.computeIfAbsent(endpoint,
+                key -> environment.getProperty(String.format(ENDPOINT_TIMEOUT, key), Long.class, timeoutMillis));
+        DeferredResult<T> result = new DeferredResult<>(timeout);
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            try {
+                result.setResult(work.get());
+            } catch (RuntimeException ex) {
+                result.setErrorResult(ex);
+            }
+        }, null);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            throw new RejectedExecutionException("Too many pending requests");
+        }
+        result.onTimeout(() -> {
+            timedOut.increment();
+            if (task.cancel(false)) {
+                executor.remove(task);
+            }
+            result.setErrorResult(new TimeoutException("Request timed out after " + timeout + " ms"));
+        });
+        return result;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>(3);
+        if (executor != null) {
+            metrics.add(new Metric<Number>("async.queue.depth", executor.getQueue().size()));
+            metrics.add(new Metric<Number>("async.queue.remaining", executor.getQueue().remainingCapacity()));
+            metrics.add(new Metric<Number>("async.active-threads", executor.getActiveCount()));
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,28 @@
+package com.scmspain.controllers.cache;
+
+public class CachedListing {
+    private final long version;
+    private final String etag;
+    private final byte[] body;
+
+    CachedListing(long version, String etag, byte[] body) {
+        this.version = version;
+        this.etag = etag;
+        this.body = body;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return serialized listing, or null when it has not been serialized for this version yet
+     */
+    public byte[] getBody() {
+        return body;
+    }
+}
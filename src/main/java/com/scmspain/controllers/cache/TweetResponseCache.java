@@ -0,0 +1,145 @@
+package com.scmspain.controllers.cache;
+
+import com.scmspain.events.TweetDiscardedEvent;
+import com.scmspain.events.TweetPublishedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the last serialized body of each listing together with the version it was built from.
+ * Versions move on every committed publish or discard, and are prefixed with a random instance tag
+ * so two instances never hand out the same ETag for different bodies.
+ */
+@Component
+public class TweetResponseCache {
+
+    public enum Listing {
+        PUBLISHED, DISCARDED
+    }
+
+    private final String instanceTag = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, Character.MAX_RADIX);
+    private final Slot published = new Slot();
+    private final Slot discarded = new Slot();
+    private boolean enabled;
+    private int maxBytes;
+
+    @Autowired
+    public TweetResponseCache(@Value("${tweets.response-cache.enabled:false}") boolean enabled,
+                              @Value("${tweets.response-cache.max-bytes:8388608}") int maxBytes) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Snapshot the current state of a listing
+     *
+     * @param listing listing to look up
+     * @return current version, its ETag and the cached body if it was already serialized
+     */
+    public CachedListing lookup(Listing listing) {
+        Slot slot = slotOf(listing);
+        long version = slot.version.get();
+        CachedListing cached = slot.cached;
+        if (cached != null && cached.getVersion() == version) {
+            return cached;
+        }
+        return new CachedListing(version, etagOf(listing, version), null);
+    }
+
+    /**
+     * Wrap the response stream so the body written to it is kept for the given version
+     *
+     * @param listing listing being written
+     * @param miss    lookup result the body is being built for
+     * @param target  response stream
+     * @return stream that writes through to target and stores the body once closed after a complete write
+     */
+    public OutputStream capture(Listing listing, CachedListing miss, OutputStream target) {
+        return new CapturingOutputStream(target, slotOf(listing), miss);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPublished(TweetPublishedEvent event) {
+        published.version.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDiscarded(TweetDiscardedEvent event) {
+        published.version.incrementAndGet();
+        discarded.version.incrementAndGet();
+    }
+
+    private Slot slotOf(Listing listing) {
+        return listing == Listing.PUBLISHED ? published : discarded;
+    }
+
+    private String etagOf(Listing listing, long version) {
+        return "\"" + instanceTag + "-" + listing.ordinal() + "-" + Long.toString(version, Character.MAX_RADIX) + "\"";
+    }
+
+    private static final class Slot {
+        private final AtomicLong version = new AtomicLong();
+        private volatile CachedListing cached;
+    }
+
+    private final class CapturingOutputStream extends FilterOutputStream {
+        private final Slot slot;
+        private final CachedListing miss;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private CapturingOutputStream(OutputStream target, Slot slot, CachedListing miss) {
+            super(target);
+            this.slot = slot;
+            this.miss = miss;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (buffer != null) {
+                buffer.write(b);
+                dropIfTooBig();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (buffer != null) {
+                buffer.write(b, off, len);
+                dropIfTooBig();
+            }
+        }
+
+        /**
+         * Store the captured body; the response stream itself is left open for the container
+         */
+        @Override
+        public void close() throws IOException {
+            flush();
+            if (buffer != null && slot.version.get() == miss.getVersion()) {
+                slot.cached = new CachedListing(miss.getVersion(), miss.getEtag(), buffer.toByteArray());
+            }
+            buffer = null;
+        }
+
+        private void dropIfTooBig() {
+            if (buffer.size() > maxBytes) {
+                buffer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.scmspain.controllers.feed;
+
+/**
+ * One event of the feed: its id, which clients send back as Last-Event-ID to resume, its name and its JSON data.
+ */
+class FeedEvent {
+
+    static final String PUBLISHED = "published";
+    static final String DISCARDED = "discarded";
+
+    private final long id;
+    private final String name;
+    private final Object data;
+
+    FeedEvent(long id, String name, Object data) {
+        this.id = id;
+        this.name = name;
+        this.data = data;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Object getData() {
+        return data;
+    }
+}
@@ -0,0 +1,152 @@
+package com.scmspain.controllers.feed;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One open feed connection and the events queued for it. Events are queued by the broadcaster and written by at
+ * most one sender at a time.
+ * <p>
+ * A subscriber resuming from further back than its buffer holds is catching up: the broadcaster leaves it alone, and
+ * its sender refills the buffer from the history every time it is empty, until it reaches the live events.
+ */
+class FeedSubscriber {
+
+    static final FeedEvent HEARTBEAT = new FeedEvent(-1, null, null);
+
+    private final SseEmitter emitter;
+    private final BlockingQueue<FeedEvent> buffer;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean closed;
+    private volatile boolean catchingUp;
+    private volatile long lastQueuedId;
+
+    FeedSubscriber(SseEmitter emitter, int bufferSize, long lastQueuedId, boolean catchingUp) {
+        this.emitter = emitter;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.lastQueuedId = lastQueuedId;
+        this.catchingUp = catchingUp;
+    }
+
+    SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    boolean isCatchingUp() {
+        return catchingUp;
+    }
+
+    long getLastQueuedId() {
+        return lastQueuedId;
+    }
+
+    /**
+     * Queue a live event, skipping the ones already queued from the history and every one while catching up
+     *
+     * @param event event to send
+     * @return false when the buffer is full
+     */
+    boolean offer(FeedEvent event) {
+        if (catchingUp) {
+            return true;
+        }
+        if (event != HEARTBEAT) {
+            if (event.getId() <= lastQueuedId) {
+                return true;
+            }
+            lastQueuedId = event.getId();
+        }
+        return buffer.offer(event);
+    }
+
+    /**
+     * Queue an event of the history while catching up
+     *
+     * @param event event to send
+     * @return false when the buffer is full and the event was not queued
+     */
+    boolean replay(FeedEvent event) {
+        if (event.getId() <= lastQueuedId) {
+            return true;
+        }
+        if (!buffer.offer(event)) {
+            return false;
+        }
+        lastQueuedId = event.getId();
+        return true;
+    }
+
+    /**
+     * Stop catching up: the history holds no event after the last queued one, so the next ones come live
+     */
+    void caughtUp() {
+        catchingUp = false;
+    }
+
+    /**
+     * Stop catching up and queue a reset event instead, because the events it had not caught up with are no longer
+     * in the history
+     *
+     * @param reset event asking to read the listings again, numbered as the last event appended
+     * @return false when the buffer is full
+     */
+    boolean reset(FeedEvent reset) {
+        lastQueuedId = reset.getId();
+        catchingUp = false;
+        return buffer.offer(reset);
+    }
+
+    /**
+     * @return true when the caller must run {@link #drain()}, false when a sender is already draining
+     */
+    boolean startDraining() {
+        return !buffer.isEmpty() && draining.compareAndSet(false, true);
+    }
+
+    /**
+     * Write every queued event
+     */
+    void drain() {
+        try {
+            FeedEvent event;
+            while (!closed && (event = buffer.poll()) != null) {
+                send(event);
+            }
+        } catch (IOException | IllegalStateException ex) {
+            close();
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    /**
+     * Complete the response and forget the queued events
+     */
+    void close() {
+        closed = true;
+        buffer.clear();
+        try {
+            emitter.complete();
+        } catch (IllegalStateException alreadyCompleted) {
+            // the connection was already closed by the client or timed out
+        }
+    }
+
+    private void send(FeedEvent event) throws IOException {
+        if (event == HEARTBEAT) {
+            emitter.send(SseEmitter.event().comment("heartbeat"));
+        } else {
+            emitter.send(SseEmitter.event().id(Long.toString(event.getId())).name(event.getName())
+                    .data(event.getData(), MediaType.APPLICATION_JSON));
+        }
+    }
+}
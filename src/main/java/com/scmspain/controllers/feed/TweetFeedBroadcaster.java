@@ -0,0 +1,274 @@
+package com.scmspain.controllers.feed;
+
+import com.scmspain.events.TweetDiscardedEvent;
+import com.scmspain.events.TweetPublishedEvent;
+import com.scmspain.services.metrics.Counter;
+import com.scmspain.services.metrics.CounterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes committed publish and discard events to the open feed connections.
+ * <p>
+ * Events are numbered and kept in a history of the last history-size ones, then a single broadcaster thread copies
+ * each of them into the buffer of every subscriber, and a few sender threads write the buffers out. A subscriber
+ * whose buffer-size buffer is full is too slow to keep up and is disconnected; it resumes from the history by
+ * reconnecting with the id of the last event it received as Last-Event-ID. However far behind it is, the history is
+ * replayed buffer-size events at a time until it has caught up with the live events. When the events it missed are
+ * no longer in the history, before or while catching up, it is sent a reset event instead, after which it should
+ * read the listings again.
+ */
+@Component
+public class TweetFeedBroadcaster implements PublicMetrics {
+
+    static final String RESET = "reset";
+
+    private Counter droppedSubscribers;
+    private boolean enabled;
+    private int bufferSize;
+    private int historySize;
+    private int maxSubscribers;
+    private int senderThreads;
+    private long timeoutMillis;
+    private long heartbeatMillis;
+
+    private final Deque<FeedEvent> history = new ArrayDeque<>();
+    // ids keep growing across restarts, so the ids handed out by a previous instance are never resumed from
+    private long lastId = System.currentTimeMillis() * 1000;
+    private final BlockingQueue<FeedEvent> inbox = new LinkedBlockingQueue<>();
+    private final Set<FeedSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private volatile boolean running;
+    private Thread broadcaster;
+    private ExecutorService senders;
+
+    @Autowired
+    public TweetFeedBroadcaster(CounterRegistry counterRegistry,
+                                @Value("${tweets.feed.enabled:false}") boolean enabled,
+                                @Value("${tweets.feed.buffer-size:256}") int bufferSize,
+                                @Value("${tweets.feed.history-size:10000}") int historySize,
+                                @Value("${tweets.feed.max-subscribers:10000}") int maxSubscribers,
+                                @Value("${tweets.feed.sender-threads:4}") int senderThreads,
+                                @Value("${tweets.feed.timeout-ms:300000}") long timeoutMillis,
+                                @Value("${tweets.feed.heartbeat-ms:15000}") long heartbeatMillis) {
+        if (bufferSize < 1 || historySize < 1 || maxSubscribers < 1 || senderThreads < 1 || timeoutMillis < 1
+                || heartbeatMillis < 1) {
+            throw new IllegalArgumentException("Feed buffer, history, subscribers, threads, timeout and heartbeat must be positive");
+        }
+        this.droppedSubscribers = counterRegistry.counter("feed-dropped-subscribers");
+        this.enabled = enabled;
+        this.bufferSize = bufferSize;
+        this.historySize = historySize;
+        this.maxSubscribers = maxSubscribers;
+        this.senderThreads = senderThreads;
+        this.timeoutMillis = timeoutMillis;
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "tweet-feed-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        broadcaster = new Thread(this::broadcast, "tweet-feed-broadcaster");
+        broadcaster.setDaemon(true);
+        broadcaster.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        broadcaster.interrupt();
+        subscribers.forEach(FeedSubscriber::close);
+        subscribers.clear();
+        senders.shutdownNow();
+    }
+
+    /**
+     * Open a feed connection
+     *
+     * @param lastEventId id of the last event the client received, null to start from the next event
+     * @return emitter of the events, starting with the ones missed since lastEventId or a reset event when they are
+     * no longer known
+     * @throws IllegalArgumentException   When the feed is disabled
+     * @throws RejectedExecutionException When max-subscribers connections are already open
+     */
+    public SseEmitter subscribe(Long lastEventId) throws IllegalArgumentException, RejectedExecutionException {
+        if (!running) {
+            throw new IllegalArgumentException("The feed is disabled");
+        }
+        if (subscribers.size() >= maxSubscribers) {
+            throw new RejectedExecutionException("Too many feed subscribers");
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        FeedSubscriber subscriber;
+        synchronized (history) {
+            subscriber = resume(emitter, lastEventId);
+            subscribers.add(subscriber);
+        }
+        emitter.onTimeout(subscriber::close);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        schedule(subscriber);
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPublished(TweetPublishedEvent event) {
+        append(FeedEvent.PUBLISHED, event.getTweet());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDiscarded(TweetDiscardedEvent event) {
+        append(FeedEvent.DISCARDED, event);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        if (!running) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new Metric<Number>("feed.subscribers", subscribers.size()));
+    }
+
+    private FeedSubscriber resume(SseEmitter emitter, Long lastEventId) {
+        if (lastEventId == null || lastEventId == lastId) {
+            return new FeedSubscriber(emitter, bufferSize, lastId, false);
+        }
+        if (lastEventId > lastId || !isInHistory(lastEventId)) {
+            FeedSubscriber subscriber = new FeedSubscriber(emitter, bufferSize, lastId - 1, false);
+            subscriber.offer(new FeedEvent(lastId, RESET, Collections.emptyMap()));
+            return subscriber;
+        }
+        FeedSubscriber subscriber = new FeedSubscriber(emitter, bufferSize, lastEventId, true);
+        replay(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * Refill the buffer of a subscriber catching up once its sender has emptied it
+     */
+    private void catchUp(FeedSubscriber subscriber) {
+        if (!subscriber.isCatchingUp() || subscriber.isClosed()) {
+            return;
+        }
+        synchronized (history) {
+            if (isInHistory(subscriber.getLastQueuedId())) {
+                replay(subscriber);
+            } else if (!subscriber.reset(new FeedEvent(lastId, RESET, Collections.emptyMap()))) {
+                drop(subscriber);
+            }
+        }
+    }
+
+    /**
+     * @return whether the events after lastEventId are all still in the history. Callers hold the history lock.
+     */
+    private boolean isInHistory(long lastEventId) {
+        FeedEvent oldest = history.peekFirst();
+        return oldest != null && lastEventId >= oldest.getId() - 1;
+    }
+
+    /**
+     * Queue the events of the history after the last one queued for a subscriber catching up, as many as its buffer
+     * takes, and let it follow the live events once it has them all. Callers hold the history lock, so no event is
+     * appended in between.
+     */
+    private void replay(FeedSubscriber subscriber) {
+        for (FeedEvent event : history) {
+            if (!subscriber.replay(event)) {
+                return;
+            }
+        }
+        subscriber.caughtUp();
+    }
+
+    private void append(String name, Object data) {
+        if (!running) {
+            return;
+        }
+        synchronized (history) {
+            FeedEvent event = new FeedEvent(++lastId, name, data);
+            history.addLast(event);
+            if (history.size() > historySize) {
+                history.removeFirst();
+            }
+            inbox.add(event);
+        }
+    }
+
+    private void broadcast() {
+        while (running) {
+            FeedEvent event;
+            try {
+                event = inbox.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            for (FeedSubscriber subscriber : subscribers) {
+                if (subscriber.offer(event == null ? FeedSubscriber.HEARTBEAT : event)) {
+                    schedule(subscriber);
+                } else {
+                    drop(subscriber);
+                }
+            }
+        }
+    }
+
+    private void drop(FeedSubscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            droppedSubscribers.increment();
+            // completing waits for a write in progress, which must not hold up the broadcaster
+            execute(subscriber::close);
+        }
+    }
+
+    private void schedule(FeedSubscriber subscriber) {
+        if (subscriber.startDraining()) {
+            execute(() -> {
+                do {
+                    subscriber.drain();
+                    catchUp(subscriber);
+                } while (subscriber.startDraining());
+            });
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            senders.execute(task);
+        } catch (RejectedExecutionException stopping) {
+            // the feed is shutting down and closes every subscriber itself
+        }
+    }
+}
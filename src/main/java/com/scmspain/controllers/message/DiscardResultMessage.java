@@ -0,0 +1,32 @@
+package com.scmspain.controllers.message;
+
+import com.scmspain.services.DiscardOutcome;
+
+public class DiscardResultMessage {
+
+    private Long tweet;
+    private DiscardOutcome result;
+
+    public DiscardResultMessage() {}
+
+    public DiscardResultMessage(Long tweet, DiscardOutcome result) {
+        this.tweet = tweet;
+        this.result = result;
+    }
+
+    public Long getTweet() {
+        return tweet;
+    }
+
+    public void setTweet(Long tweet) {
+        this.tweet = tweet;
+    }
+
+    public DiscardOutcome getResult() {
+        return result;
+    }
+
+    public void setResult(DiscardOutcome result) {
+        this.result = result;
+    }
+}
@@ -0,0 +1,30 @@
+package com.scmspain.controllers.message;
+
+public class PublishResultMessage {
+
+    private Long id;
+    private ExceptionMessage error;
+
+    public PublishResultMessage() {}
+
+    public PublishResultMessage(Long id, ExceptionMessage error) {
+        this.id = id;
+        this.error = error;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public ExceptionMessage getError() {
+        return error;
+    }
+
+    public void setError(ExceptionMessage error) {
+        this.error = error;
+    }
+}
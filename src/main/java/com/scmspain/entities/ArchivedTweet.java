@@ -0,0 +1,63 @@
+package com.scmspain.entities;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.Date;
+
+/**
+ * Tweet moved out of the tweet table by the archiver. Rows keep their id and every column, and are only
+ * read through queries that build {@link Tweet} instances. Its listing indexes are created in import.sql, like the
+ * ones of the tweet table.
+ */
+@Entity
+@Table(name = "tweet_archive", indexes = {
+        @Index(name = "idx_tweet_archive_publisher", columnList = "publisher, discarded, publication_date DESC, id")
+})
+public class ArchivedTweet {
+
+    @Id
+    private Long id;
+    @Column(nullable = false)
+    private String publisher;
+    @Column(nullable = false)
+    private String tweet;
+    @Column(nullable = false)
+    private boolean discarded;
+    @Column(name = "publication_date", nullable = false)
+    private Date publicationDate;
+    @Column(name = "discarded_date")
+    private Date discardedDate;
+    @Column
+    private Long pre2015MigrationStatus;
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getPublisher() {
+        return publisher;
+    }
+
+    public String getTweet() {
+        return tweet;
+    }
+
+    public boolean getDiscarded() {
+        return discarded;
+    }
+
+    public Date getPublicationDate() {
+        return publicationDate;
+    }
+
+    public Date getDiscardedDate() {
+        return discardedDate;
+    }
+
+    public Long getPre2015MigrationStatus() {
+        return pre2015MigrationStatus;
+    }
+}
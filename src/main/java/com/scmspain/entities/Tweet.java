@@ -1,17 +1,39 @@
 package com.scmspain.entities;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import java.util.Date;
 
+/**
+ * The listing indexes, PUBLISHED_INDEX and DISCARDED_INDEX, are created in import.sql: they lead with the date the
+ * listing is sorted by and keep its descending order, which Hibernate drops from an {@link Index} column list. H2
+ * only reads rows in index order, skipping the sort, when the first index column matches the first ORDER BY column
+ * and its direction.
+ */
 @Entity
+@Table(indexes = {
+        @Index(name = Tweet.PUBLISHER_INDEX, columnList = "publisher, discarded, publication_date DESC, id")
+})
 public class Tweet {
+    public static final String PUBLISHED_INDEX = "idx_tweet_published";
+    public static final String DISCARDED_INDEX = "idx_tweet_discarded";
+    public static final String PUBLISHER_INDEX = "idx_tweet_publisher";
+
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "tweet_sequence")
+    @GenericGenerator(name = "tweet_sequence", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "tweet_sequence"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled")
+    })
     private Long id;
     @Column(nullable = false)
     private String publisher;
@@ -21,10 +43,10 @@ public class Tweet {
     @Column(nullable = false)
     private boolean discarded;
     @JsonIgnore
-    @Column(nullable = false)
+    @Column(name = "publication_date", nullable = false)
     private Date publicationDate;
     @JsonIgnore
-    @Column
+    @Column(name = "discarded_date")
     private Date discardedDate;
     @Column
     private Long pre2015MigrationStatus = 0L;
@@ -39,6 +61,17 @@ public class Tweet {
         this.publicationDate = publicationDate;
     }
 
+    /**
+     * Detached tweet holding every column, used by the listing queries to skip entity hydration
+     */
+    public Tweet(Long id, String publisher, String tweet, boolean discarded, Date publicationDate, Date discardedDate,
+                 Long pre2015MigrationStatus) {
+        this(publisher, tweet, discarded, publicationDate);
+        this.id = id;
+        this.discardedDate = discardedDate;
+        this.pre2015MigrationStatus = pre2015MigrationStatus;
+    }
+
     public Long getId() {
         return id;
     }
@@ -0,0 +1,21 @@
+package com.scmspain.events;
+
+import java.util.Date;
+
+public class TweetDiscardedEvent {
+    private final Long id;
+    private final Date discardedDate;
+
+    public TweetDiscardedEvent(Long id, Date discardedDate) {
+        this.id = id;
+        this.discardedDate = discardedDate;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Date getDiscardedDate() {
+        return discardedDate;
+    }
+}
@@ -0,0 +1,15 @@
+package com.scmspain.events;
+
+import com.scmspain.entities.Tweet;
+
+public class TweetPublishedEvent {
+    private final Tweet tweet;
+
+    public TweetPublishedEvent(Tweet tweet) {
+        this.tweet = tweet;
+    }
+
+    public Tweet getTweet() {
+        return tweet;
+    }
+}
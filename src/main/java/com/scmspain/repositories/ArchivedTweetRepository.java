@@ -0,0 +1,127 @@
+package com.scmspain.repositories;
+
+import com.scmspain.entities.ArchivedTweet;
+import com.scmspain.entities.Tweet;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Archive table of tweets. Listing queries return detached {@link Tweet} instances, in the same order as
+ * their {@link TweetRepository} counterparts.
+ */
+public interface ArchivedTweetRepository extends Repository<ArchivedTweet, Long> {
+    String LISTED_TWEET = "select new com.scmspain.entities.Tweet(a.id, a.publisher, a.tweet, a.discarded," +
+            " a.publicationDate, a.discardedDate, a.pre2015MigrationStatus) from ArchivedTweet a";
+
+    @Query(LISTED_TWEET + " where a.discarded = false order by a.publicationDate desc, a.id desc")
+    List<Tweet> findPublished(Pageable pageable);
+
+    @Query(LISTED_TWEET + " where a.discarded = true order by a.discardedDate desc, a.id desc")
+    List<Tweet> findDiscarded(Pageable pageable);
+
+    @Query(LISTED_TWEET + " where a.discarded = false" +
+            " and (a.publicationDate < :date or (a.publicationDate = :date and a.id < :id))" +
+            " order by a.publicationDate desc, a.id desc")
+    List<Tweet> findPublishedAfterCursor(@Param("date") Date date, @Param("id") Long id, Pageable pageable);
+
+    @Query(LISTED_TWEET + " where a.discarded = true" +
+            " and (a.discardedDate < :date or (a.discardedDate = :date and a.id < :id))" +
+            " order by a.discardedDate desc, a.id desc")
+    List<Tweet> findDiscardedAfterCursor(@Param("date") Date date, @Param("id") Long id, Pageable pageable);
+
+    @Query(LISTED_TWEET + " where a.publisher = :publisher and a.discarded = false" +
+            " order by a.publicationDate desc, a.id desc")
+    List<Tweet> findPublishedByPublisher(@Param("publisher") String publisher, Pageable pageable);
+
+    @Query(LISTED_TWEET + " where a.publisher = :publisher and a.discarded = false" +
+            " and (a.publicationDate < :date or (a.publicationDate = :date and a.id < :id))" +
+            " order by a.publicationDate desc, a.id desc")
+    List<Tweet> findPublishedByPublisherAfterCursor(@Param("publisher") String publisher, @Param("date") Date date,
+                                                    @Param("id") Long id, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query(LISTED_TWEET + " where a.discarded = false order by a.publicationDate desc, a.id desc")
+    Stream<Tweet> streamPublished();
+
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query(LISTED_TWEET + " where a.discarded = true order by a.discardedDate desc, a.id desc")
+    Stream<Tweet> streamDiscarded();
+
+    @Query(LISTED_TWEET + " where a.id = :id")
+    Tweet findTweet(@Param("id") Long id);
+
+    @Query("select a.id from ArchivedTweet a where a.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Copy tweets from the tweet table, which must have been locked by the caller
+     *
+     * @param ids ids of the tweets to archive
+     * @return number of archived tweets
+     */
+    @Modifying
+    @Query("insert into ArchivedTweet (id, publisher, tweet, discarded, publicationDate, discardedDate, pre2015MigrationStatus)" +
+            " select t.id, t.publisher, t.tweet, t.discarded, t.publicationDate, t.discardedDate, t.pre2015MigrationStatus" +
+            " from Tweet t where t.id in :ids")
+    int copyFromTweets(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Copy archived tweets that are not discarded back to the tweet table
+     *
+     * @param ids ids of the tweets to restore
+     * @return number of restored tweets
+     */
+    @Modifying
+    @Query("insert into Tweet (id, publisher, tweet, discarded, publicationDate, discardedDate, pre2015MigrationStatus)" +
+            " select a.id, a.publisher, a.tweet, a.discarded, a.publicationDate, a.discardedDate, a.pre2015MigrationStatus" +
+            " from ArchivedTweet a where a.id in :ids and a.discarded = false")
+    int copyPublishedToTweets(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("delete from ArchivedTweet a where a.id in :ids and a.discarded = false")
+    int deletePublished(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Lock archived tweets that are newer than the archive cutoffs
+     *
+     * @param publishedBefore publication date cutoff of published tweets
+     * @param discardedBefore discard date cutoff of discarded tweets
+     * @param pageable        maximum number of tweets to lock
+     * @return tweets to restore, newest first in the order of their listing, so that a partial run only
+     * restores the head of each listing
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from ArchivedTweet a where (a.discarded = false and a.publicationDate >= :publishedBefore)" +
+            " or (a.discarded = true and a.discardedDate >= :discardedBefore)" +
+            " order by coalesce(a.discardedDate, a.publicationDate) desc, a.id desc")
+    List<ArchivedTweet> findAllForRestore(@Param("publishedBefore") Date publishedBefore,
+                                          @Param("discardedBefore") Date discardedBefore, Pageable pageable);
+
+    /**
+     * Copy archived tweets, discarded or not, back to the tweet table
+     *
+     * @param ids ids of the tweets to restore
+     * @return number of restored tweets
+     */
+    @Modifying
+    @Query("insert into Tweet (id, publisher, tweet, discarded, publicationDate, discardedDate, pre2015MigrationStatus)" +
+            " select a.id, a.publisher, a.tweet, a.discarded, a.publicationDate, a.discardedDate, a.pre2015MigrationStatus" +
+            " from ArchivedTweet a where a.id in :ids")
+    int copyToTweets(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("delete from ArchivedTweet a where a.id in :ids")
+    int deleteAllByIdIn(@Param("ids") Collection<Long> ids);
+}
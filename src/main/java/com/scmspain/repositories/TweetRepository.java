@@ -1,11 +1,131 @@
 package com.scmspain.repositories;
 
 import com.scmspain.entities.Tweet;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
+/**
+ * Listing queries return detached tweets built by a constructor expression: rows are not hydrated as managed
+ * entities, so they hold no persistence context entry nor dirty-checking snapshot.
+ */
 public interface TweetRepository extends PagingAndSortingRepository<Tweet,Long> {
+    String LISTED_TWEET = "select new com.scmspain.entities.Tweet(t.id, t.publisher, t.tweet, t.discarded," +
+            " t.publicationDate, t.discardedDate, t.pre2015MigrationStatus) from Tweet t";
+
+    @Query(LISTED_TWEET + " where t.discarded = false order by t.publicationDate desc")
     List<Tweet> findAllByDiscardedFalseOrderByPublicationDateDesc();
+
+    @Query(LISTED_TWEET + " where t.discarded = true order by t.discardedDate desc")
     List<Tweet> findAllByDiscardedTrueOrderByDiscardedDateDesc();
+
+    @Query(LISTED_TWEET + " where t.discarded = false order by t.publicationDate desc, t.id desc")
+    List<Tweet> findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(Pageable pageable);
+
+    @Query(LISTED_TWEET + " where t.discarded = true order by t.discardedDate desc, t.id desc")
+    List<Tweet> findAllByDiscardedTrueOrderByDiscardedDateDescIdDesc(Pageable pageable);
+
+    @Query(LISTED_TWEET + " where t.discarded = false" +
+            " and (t.publicationDate < :date or (t.publicationDate = :date and t.id < :id))" +
+            " order by t.publicationDate desc, t.id desc")
+    List<Tweet> findPublishedAfterCursor(@Param("date") Date date, @Param("id") Long id, Pageable pageable);
+
+    @Query(LISTED_TWEET + " where t.discarded = true" +
+            " and (t.discardedDate < :date or (t.discardedDate = :date and t.id < :id))" +
+            " order by t.discardedDate desc, t.id desc")
+    List<Tweet> findDiscardedAfterCursor(@Param("date") Date date, @Param("id") Long id, Pageable pageable);
+
+    @Query(LISTED_TWEET + " where t.publisher = :publisher and t.discarded = false" +
+            " order by t.publicationDate desc, t.id desc")
+    List<Tweet> findPublishedByPublisher(@Param("publisher") String publisher, Pageable pageable);
+
+    @Query(LISTED_TWEET + " where t.publisher = :publisher and t.discarded = false" +
+            " and (t.publicationDate < :date or (t.publicationDate = :date and t.id < :id))" +
+            " order by t.publicationDate desc, t.id desc")
+    List<Tweet> findPublishedByPublisherAfterCursor(@Param("publisher") String publisher, @Param("date") Date date,
+                                                    @Param("id") Long id, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query(LISTED_TWEET + " where t.discarded = false order by t.publicationDate desc")
+    Stream<Tweet> streamAllPublished();
+
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query(LISTED_TWEET + " where t.discarded = true order by t.discardedDate desc")
+    Stream<Tweet> streamAllDiscarded();
+
+    @Query(LISTED_TWEET + " where t.discarded = false and t.id in :ids")
+    List<Tweet> findPublishedByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query(LISTED_TWEET + " where t.discarded = false and t.id >= :from and t.id < :to order by t.id")
+    List<Tweet> findPublishedInIdRange(@Param("from") long from, @Param("to") long to);
+
+    @Query("select min(t.id) from Tweet t")
+    Long findMinId();
+
+    @Query("select max(t.id) from Tweet t")
+    Long findMaxId();
+
+    /**
+     * Discard a tweet unless it is already discarded, in a single statement
+     *
+     * @param id            id of the tweet to discard
+     * @param discardedDate date to record as discard date
+     * @return 1 when the tweet was discarded, 0 when it does not exist or was already discarded
+     */
+    @Modifying
+    @Query("update Tweet t set t.discarded = true, t.discardedDate = :date where t.id = :id and t.discarded = false")
+    int discard(@Param("id") Long id, @Param("date") Date discardedDate);
+
+    /**
+     * Load and lock tweets so that their discarded flag cannot change until the transaction ends. Rows are
+     * locked in id order, so concurrent batches cannot deadlock each other.
+     *
+     * @param ids ids of the tweets to discard
+     * @return the existing tweets among them
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from Tweet t where t.id in :ids order by t.id")
+    List<Tweet> findAllForDiscard(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Discard every given tweet that is not discarded yet, in a single statement
+     *
+     * @param ids           ids of the tweets to discard
+     * @param discardedDate date to record as discard date
+     * @return number of discarded tweets
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update Tweet t set t.discarded = true, t.discardedDate = :date where t.id in :ids and t.discarded = false")
+    int discardAll(@Param("ids") Collection<Long> ids, @Param("date") Date discardedDate);
+
+    /**
+     * Load and lock the tweets the archiver should move: published before one date or discarded before another
+     *
+     * @param publishedBefore publication date cutoff for published tweets
+     * @param discardedBefore discard date cutoff for discarded tweets
+     * @param pageable        maximum number of tweets to lock
+     * @return tweets to archive, oldest first in the order of their listing, so that a partial run only
+     * archives the tail of each listing
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from Tweet t where (t.discarded = false and t.publicationDate < :publishedBefore)" +
+            " or (t.discarded = true and t.discardedDate < :discardedBefore)" +
+            " order by coalesce(t.discardedDate, t.publicationDate), t.id")
+    List<Tweet> findAllForArchive(@Param("publishedBefore") Date publishedBefore,
+                                  @Param("discardedBefore") Date discardedBefore, Pageable pageable);
+
+    @Modifying(clearAutomatically = true)
+    @Query("delete from Tweet t where t.id in :ids")
+    int deleteAllByIdIn(@Param("ids") Collection<Long> ids);
 }
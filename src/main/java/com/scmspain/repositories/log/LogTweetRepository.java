@@ -0,0 +1,807 @@
+package com.scmspain.repositories.log;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.repositories.TweetRepository;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tweet storage on an append-only log of memory-mapped segment files, selected with tweets.storage=log instead of
+ * the tweet table.
+ * <p>
+ * Every save appends the whole tweet, and discards and deletes append tombstones holding only the id. An in-memory
+ * index maps every id to its latest record, and sorted sets of (date, id) keys serve the listings in the order of
+ * their queries, so reads never scan the log. The log is replayed to rebuild them on startup. When the active
+ * segment is full a new one is started, and {@link #compact()} rewrites the live tweets of the oldest segment into
+ * the active one once less than compaction-threshold of it is live, then deletes it.
+ * <p>
+ * Writes made inside a transaction are visible at once and are undone when it rolls back. Segments are flushed to
+ * disk when they are rolled, compacted or closed, not on every write, so a crash of the machine loses the writes
+ * the operating system had not written back yet.
+ */
+public class LogTweetRepository implements TweetRepository {
+
+    private static final String LOCK_FILE = "lock";
+
+    private File directory;
+    private int segmentSize;
+    private double compactionThreshold;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final TreeMap<Long, Entry> index = new TreeMap<>();
+    private final TreeSet<Key> published = new TreeSet<>();
+    private final TreeSet<Key> discarded = new TreeSet<>();
+    private final Map<String, TreeSet<Key>> publishers = new HashMap<>();
+    private Segment active;
+    private long lastId;
+    private RandomAccessFile lockFile;
+    private FileLock fileLock;
+
+    public LogTweetRepository(File directory, int segmentSize, double compactionThreshold) {
+        if (segmentSize < 1024 || compactionThreshold < 0 || compactionThreshold >= 1) {
+            throw new IllegalArgumentException("Segment size must be at least 1024 bytes and compaction threshold between 0 and 1");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Lock the log directory and replay its segments
+     *
+     * @throws IOException           When the segments cannot be read
+     * @throws IllegalStateException When the directory is used by another repository
+     */
+    @PostConstruct
+    public void open() throws IOException, IllegalStateException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create log directory " + directory);
+        }
+        lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+        try {
+            fileLock = lockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException ex) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            lockFile.close();
+            throw new IllegalStateException("Log directory " + directory + " is used by another repository");
+        }
+        File[] files = directory.listFiles(Segment::isSegment);
+        Arrays.sort(files);
+        lock.writeLock().lock();
+        try {
+            for (File file : files) {
+                Segment segment = Segment.open(file);
+                segments.put(segment.getNumber(), segment);
+                lastId = Math.max(lastId, segment.getLastId());
+                segment.forEach((record, offset) -> {
+                    apply(record, segment, offset);
+                    lastId = Math.max(lastId, record.getId());
+                });
+            }
+            if (segments.isEmpty()) {
+                active = Segment.create(directory, 0, segmentSize, lastId);
+                segments.put(active.getNumber(), active);
+            } else {
+                active = segments.lastEntry().getValue();
+                active.clearTail();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+            segments.clear();
+            if (fileLock != null) {
+                fileLock.release();
+                fileLock = null;
+                lockFile.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the live tweets of the oldest segments into the active one and delete them, as long as less than
+     * compaction-threshold of their bytes is live. Reads and writes wait while a segment is compacted.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            while (segments.size() > 1) {
+                Segment oldest = segments.firstEntry().getValue();
+                if (oldest.getLiveBytes() > compactionThreshold * oldest.getWrittenBytes()) {
+                    return;
+                }
+                oldest.forEach((record, offset) -> {
+                    Entry entry = index.get(record.getId());
+                    if (record.getType() == TweetRecord.PUT && entry != null && entry.segment == oldest
+                            && entry.offset == offset) {
+                        append(TweetRecord.put(tweetOf(entry)));
+                    }
+                });
+                // the rewritten tweets must reach the disk before the only other copy is gone
+                active.flush();
+                segments.remove(oldest.getNumber());
+                oldest.delete();
+            }
+        } catch (IOException ex) {
+            throw new DataAccessResourceFailureException("Cannot compact the tweet log", ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public <S extends Tweet> S save(S tweet) {
+        lock.writeLock().lock();
+        try {
+            boolean newTweet = tweet.getId() == null;
+            if (newTweet) {
+                tweet.setId(lastId + 1);
+            }
+            TweetRecord record;
+            try {
+                record = TweetRecord.put(tweet);
+            } catch (IllegalArgumentException ex) {
+                if (newTweet) {
+                    tweet.setId(null);
+                }
+                throw ex;
+            }
+            lastId = Math.max(lastId, tweet.getId());
+            remember(tweet.getId());
+            append(record);
+            return tweet;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public <S extends Tweet> List<S> save(Iterable<S> tweets) {
+        List<S> saved = new ArrayList<>();
+        for (S tweet : tweets) {
+            saved.add(save(tweet));
+        }
+        return saved;
+    }
+
+    @Override
+    public Tweet findOne(Long id) {
+        lock.readLock().lock();
+        try {
+            Entry entry = index.get(id);
+            return entry == null ? null : tweetOf(entry);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean exists(Long id) {
+        lock.readLock().lock();
+        try {
+            return index.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Tweet> findAll() {
+        lock.readLock().lock();
+        try {
+            return index.values().stream().map(this::tweetOf).collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Tweet> findAll(Iterable<Long> ids) {
+        lock.readLock().lock();
+        try {
+            List<Tweet> tweets = new ArrayList<>();
+            for (Long id : ids) {
+                Entry entry = index.get(id);
+                if (entry != null) {
+                    tweets.add(tweetOf(entry));
+                }
+            }
+            return tweets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param sort orders by any property of {@link Tweet}; nulls go first in ascending order unless told otherwise,
+     *             as H2 sorts them
+     * @return every tweet, in id order within equal values
+     * @throws IllegalArgumentException When a property is not one of a tweet
+     */
+    @Override
+    public List<Tweet> findAll(Sort sort) throws IllegalArgumentException {
+        List<Tweet> tweets = findAll();
+        if (sort != null) {
+            tweets.sort(comparatorOf(sort));
+        }
+        return tweets;
+    }
+
+    /**
+     * @param pageable page and its sort, as in {@link #findAll(Sort)}
+     * @return page of the tweets, in id order when it has no sort
+     * @throws IllegalArgumentException When a sort property is not one of a tweet
+     */
+    @Override
+    public Page<Tweet> findAll(Pageable pageable) throws IllegalArgumentException {
+        if (pageable == null) {
+            return new PageImpl<>(findAll());
+        }
+        List<Tweet> tweets = findAll(pageable.getSort());
+        int from = Math.min(pageable.getOffset(), tweets.size());
+        int to = Math.min(from + pageable.getPageSize(), tweets.size());
+        return new PageImpl<>(new ArrayList<>(tweets.subList(from, to)), pageable, tweets.size());
+    }
+
+    @Override
+    public long count() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param id id of the tweet to delete
+     * @throws EmptyResultDataAccessException When there is no tweet with that id
+     */
+    @Override
+    public void delete(Long id) throws EmptyResultDataAccessException {
+        if (deleteAllByIdIn(Collections.singletonList(id)) == 0) {
+            throw new EmptyResultDataAccessException(String.format("No %s entity with id %s exists!", Tweet.class, id), 1);
+        }
+    }
+
+    @Override
+    public void delete(Tweet tweet) {
+        if (tweet.getId() != null) {
+            deleteAllByIdIn(Collections.singletonList(tweet.getId()));
+        }
+    }
+
+    @Override
+    public void delete(Iterable<? extends Tweet> tweets) {
+        for (Tweet tweet : tweets) {
+            delete(tweet);
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        lock.writeLock().lock();
+        try {
+            deleteAllByIdIn(new ArrayList<>(index.keySet()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Tweet> findAllByDiscardedFalseOrderByPublicationDateDesc() {
+        return list(published, null, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Tweet> findAllByDiscardedTrueOrderByDiscardedDateDesc() {
+        return list(discarded, null, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Tweet> findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(Pageable pageable) {
+        return list(published, null, pageable.getOffset(), pageable.getPageSize());
+    }
+
+    @Override
+    public List<Tweet> findAllByDiscardedTrueOrderByDiscardedDateDescIdDesc(Pageable pageable) {
+        return list(discarded, null, pageable.getOffset(), pageable.getPageSize());
+    }
+
+    @Override
+    public List<Tweet> findPublishedAfterCursor(Date date, Long id, Pageable pageable) {
+        return list(published, new Key(date, id), pageable.getOffset(), pageable.getPageSize());
+    }
+
+    @Override
+    public List<Tweet> findDiscardedAfterCursor(Date date, Long id, Pageable pageable) {
+        return list(discarded, new Key(date, id), pageable.getOffset(), pageable.getPageSize());
+    }
+
+    @Override
+    public List<Tweet> findPublishedByPublisher(String publisher, Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            return list(publishers.getOrDefault(publisher, new TreeSet<>()), null, pageable.getOffset(), pageable.getPageSize());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Tweet> findPublishedByPublisherAfterCursor(String publisher, Date date, Long id, Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            return list(publishers.getOrDefault(publisher, new TreeSet<>()), new Key(date, id), pageable.getOffset(),
+                    pageable.getPageSize());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stream the published tweets without holding the whole listing: the order is taken when the stream is created,
+     * and each tweet is read when the stream reaches it, skipping the ones discarded or deleted in the meantime
+     */
+    @Override
+    public Stream<Tweet> streamAllPublished() {
+        return stream(published, false);
+    }
+
+    @Override
+    public Stream<Tweet> streamAllDiscarded() {
+        return stream(discarded, true);
+    }
+
+    @Override
+    public List<Tweet> findPublishedByIdIn(Collection<Long> ids) {
+        return findAll(ids).stream().filter(tweet -> !tweet.getDiscarded()).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Tweet> findPublishedInIdRange(long from, long to) {
+        lock.readLock().lock();
+        try {
+            return index.subMap(from, true, to, false).values().stream()
+                    .filter(entry -> !entry.discarded)
+                    .map(this::tweetOf)
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Long findMinId() {
+        lock.readLock().lock();
+        try {
+            return index.isEmpty() ? null : index.firstKey();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Long findMaxId() {
+        lock.readLock().lock();
+        try {
+            return index.isEmpty() ? null : index.lastKey();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Discard a tweet unless it is already discarded, appending a discard tombstone
+     *
+     * @param id            id of the tweet to discard
+     * @param discardedDate date to record as discard date
+     * @return 1 when the tweet was discarded, 0 when it does not exist or was already discarded
+     */
+    @Override
+    public int discard(Long id, Date discardedDate) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = index.get(id);
+            if (entry == null || entry.discarded) {
+                return 0;
+            }
+            remember(id);
+            append(TweetRecord.discard(id, discardedDate));
+            return 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * There are no row locks to take: the discard tombstones are appended by a single writer, so the discarded flag
+     * of a tweet is only ever changed once.
+     *
+     * @param ids ids of the tweets to discard
+     * @return the existing tweets among them, in id order
+     */
+    @Override
+    public List<Tweet> findAllForDiscard(Collection<Long> ids) {
+        return findAll(new TreeSet<>(ids));
+    }
+
+    @Override
+    public int discardAll(Collection<Long> ids, Date discardedDate) {
+        lock.writeLock().lock();
+        try {
+            int discardedTweets = 0;
+            for (Long id : ids) {
+                discardedTweets += discard(id, discardedDate);
+            }
+            return discardedTweets;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Tweet> findAllForArchive(Date publishedBefore, Date discardedBefore, Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            return index.values().stream()
+                    .filter(entry -> entry.discarded
+                            ? entry.discardedDate != null && entry.discardedDate.before(discardedBefore)
+                            : entry.publicationDate < publishedBefore.getTime())
+                    .sorted(Comparator.comparingLong((Entry entry) -> entry.discardedDate != null
+                            ? entry.discardedDate.getTime() : entry.publicationDate)
+                            .thenComparingLong(entry -> entry.id))
+                    .skip(pageable.getOffset())
+                    .limit(pageable.getPageSize())
+                    .map(this::tweetOf)
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Delete tweets, appending a delete tombstone for each of them
+     *
+     * @param ids ids of the tweets to delete
+     * @return number of deleted tweets
+     */
+    @Override
+    public int deleteAllByIdIn(Collection<Long> ids) {
+        lock.writeLock().lock();
+        try {
+            int deleted = 0;
+            for (Long id : ids) {
+                if (index.containsKey(id)) {
+                    remember(id);
+                    append(TweetRecord.delete(id));
+                    deleted++;
+                }
+            }
+            return deleted;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<Tweet> list(NavigableSet<Key> keys, Key after, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            return (after == null ? keys : keys.tailSet(after, false)).stream()
+                    .skip(offset)
+                    .limit(limit)
+                    .map(key -> tweetOf(index.get(key.id)))
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Stream<Tweet> stream(NavigableSet<Key> keys, boolean discardedTweets) {
+        List<Long> ids;
+        lock.readLock().lock();
+        try {
+            ids = keys.stream().map(key -> key.id).collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ids.stream()
+                .map(this::findOne)
+                .filter(tweet -> tweet != null && tweet.getDiscarded() == discardedTweets);
+    }
+
+    private static Comparator<Tweet> comparatorOf(Sort sort) throws IllegalArgumentException {
+        Comparator<Tweet> comparator = (first, second) -> 0;
+        for (Sort.Order order : sort) {
+            comparator = comparator.thenComparing(comparatorOf(order));
+        }
+        return comparator;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparator<Tweet> comparatorOf(Sort.Order order) throws IllegalArgumentException {
+        Function<Tweet, Comparable> property;
+        switch (order.getProperty()) {
+            case "id":
+                property = Tweet::getId;
+                break;
+            case "publisher":
+                property = Tweet::getPublisher;
+                break;
+            case "tweet":
+                property = Tweet::getTweet;
+                break;
+            case "discarded":
+                property = Tweet::getDiscarded;
+                break;
+            case "publicationDate":
+                property = Tweet::getPublicationDate;
+                break;
+            case "discardedDate":
+                property = Tweet::getDiscardedDate;
+                break;
+            case "pre2015MigrationStatus":
+                property = Tweet::getPre2015MigrationStatus;
+                break;
+            default:
+                throw new IllegalArgumentException("Tweets have no property " + order.getProperty());
+        }
+        if (order.isIgnoreCase()) {
+            Function<Tweet, Comparable> caseSensitive = property;
+            property = tweet -> {
+                Comparable value = caseSensitive.apply(tweet);
+                return value instanceof String ? ((String) value).toLowerCase() : value;
+            };
+        }
+        Comparator<Comparable> values = order.isAscending() ? Comparator.naturalOrder() : Comparator.reverseOrder();
+        boolean nullsFirst = order.getNullHandling() == Sort.NullHandling.NATIVE
+                ? order.isAscending()
+                : order.getNullHandling() == Sort.NullHandling.NULLS_FIRST;
+        return Comparator.comparing(property, nullsFirst ? Comparator.nullsFirst(values) : Comparator.nullsLast(values));
+    }
+
+    private Tweet tweetOf(Entry entry) {
+        Tweet tweet = entry.segment.read(entry.offset).toTweet();
+        tweet.setDiscarded(entry.discarded);
+        tweet.setDiscardedDate(entry.discardedDate);
+        return tweet;
+    }
+
+    /**
+     * Append a record to the active segment, rolling to a new segment when it is full, and apply it to the index.
+     * Callers hold the write lock.
+     */
+    private void append(TweetRecord record) {
+        int offset = active.append(record);
+        if (offset < 0) {
+            roll();
+            offset = active.append(record);
+            if (offset < 0) {
+                throw new IllegalArgumentException("Tweet " + record.getId() + " does not fit in a log segment");
+            }
+        }
+        apply(record, active, offset);
+    }
+
+    private void roll() {
+        active.flush();
+        try {
+            active = Segment.create(directory, active.getNumber() + 1, segmentSize, lastId);
+        } catch (IOException ex) {
+            throw new DataAccessResourceFailureException("Cannot start a new tweet log segment", ex);
+        }
+        segments.put(active.getNumber(), active);
+    }
+
+    private void apply(TweetRecord record, Segment segment, int offset) {
+        Entry previous = index.get(record.getId());
+        switch (record.getType()) {
+            case TweetRecord.PUT:
+                unlink(previous);
+                link(new Entry(record, segment, offset));
+                break;
+            case TweetRecord.DISCARD:
+                if (previous != null) {
+                    unlink(previous);
+                    link(previous.discard(record.getDiscardedDate()));
+                }
+                break;
+            default:
+                unlink(previous);
+        }
+    }
+
+    private void link(Entry entry) {
+        index.put(entry.id, entry);
+        entry.segment.addLiveBytes(entry.size);
+        if (entry.discarded) {
+            discarded.add(new Key(entry.discardedDate, entry.id));
+        } else {
+            Key key = new Key(entry.publicationDate, entry.id);
+            published.add(key);
+            publishers.computeIfAbsent(entry.publisher, publisher -> new TreeSet<>()).add(key);
+        }
+    }
+
+    private void unlink(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        index.remove(entry.id);
+        entry.segment.addLiveBytes(-entry.size);
+        if (entry.discarded) {
+            discarded.remove(new Key(entry.discardedDate, entry.id));
+        } else {
+            Key key = new Key(entry.publicationDate, entry.id);
+            published.remove(key);
+            TreeSet<Key> keys = publishers.get(entry.publisher);
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                publishers.remove(entry.publisher);
+            }
+        }
+    }
+
+    /**
+     * Keep the version of a tweet from before its first change in the current transaction, to restore it if the
+     * transaction rolls back. Callers hold the write lock.
+     */
+    private void remember(Long id) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        UndoLog undoLog = (UndoLog) TransactionSynchronizationManager.getResource(this);
+        if (undoLog == null) {
+            undoLog = new UndoLog();
+            TransactionSynchronizationManager.bindResource(this, undoLog);
+            TransactionSynchronizationManager.registerSynchronization(undoLog);
+        }
+        if (!undoLog.versions.containsKey(id)) {
+            Entry entry = index.get(id);
+            undoLog.versions.put(id, entry == null ? null : tweetOf(entry));
+        }
+    }
+
+    private class UndoLog extends TransactionSynchronizationAdapter {
+
+        private final Map<Long, Tweet> versions = new LinkedHashMap<>();
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(LogTweetRepository.this);
+            if (status != STATUS_ROLLED_BACK) {
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                versions.forEach((id, tweet) -> {
+                    if (tweet != null) {
+                        append(TweetRecord.put(tweet));
+                    } else if (index.containsKey(id)) {
+                        append(TweetRecord.delete(id));
+                    }
+                });
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Latest record of a tweet, and the fields its listings are sorted and filtered by
+     */
+    private static class Entry {
+
+        private final long id;
+        private final Segment segment;
+        private final int offset;
+        private final int size;
+        private final String publisher;
+        private final long publicationDate;
+        private final boolean discarded;
+        private final Date discardedDate;
+
+        private Entry(TweetRecord record, Segment segment, int offset) {
+            this(record.getId(), segment, offset, record.size(), record.getPublisher(),
+                    record.getPublicationDate() == null ? Long.MIN_VALUE : record.getPublicationDate().getTime(),
+                    record.isDiscarded(), record.getDiscardedDate());
+        }
+
+        private Entry(long id, Segment segment, int offset, int size, String publisher, long publicationDate,
+                      boolean discarded, Date discardedDate) {
+            this.id = id;
+            this.segment = segment;
+            this.offset = offset;
+            this.size = size;
+            this.publisher = publisher;
+            this.publicationDate = publicationDate;
+            this.discarded = discarded;
+            this.discardedDate = discardedDate;
+        }
+
+        private Entry discard(Date date) {
+            return new Entry(id, segment, offset, size, publisher, publicationDate, true, date);
+        }
+    }
+
+    /**
+     * Position in a listing: newest date first, then highest id first, as the listing queries order them. Tweets
+     * without a date go last.
+     */
+    private static class Key implements Comparable<Key> {
+
+        private final long date;
+        private final long id;
+
+        private Key(long date, long id) {
+            this.date = date;
+            this.id = id;
+        }
+
+        private Key(Date date, long id) {
+            this(date == null ? Long.MIN_VALUE : date.getTime(), id);
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byDate = Long.compare(other.date, date);
+            return byDate != 0 ? byDate : Long.compare(other.id, id);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).date == date && ((Key) other).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(date, id);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.scmspain.repositories.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * One fixed-size file of the log, mapped into memory. It starts with the highest id handed out when it was created,
+ * so ids keep growing after the segments holding the newest tweets are compacted away, and is followed by records
+ * up to the first zero length.
+ * <p>
+ * Only the writer moves the write position; records are read through duplicates of the mapping, so readers never
+ * share a buffer position.
+ */
+class Segment {
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8;
+
+    private final long number;
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private int position;
+    // bytes of the PUT records still holding the latest version of a tweet
+    private long liveBytes;
+
+    private Segment(long number, File file, RandomAccessFile raf, MappedByteBuffer buffer) {
+        this.number = number;
+        this.file = file;
+        this.raf = raf;
+        this.buffer = buffer;
+        this.position = HEADER_SIZE;
+    }
+
+    /**
+     * @param directory log directory
+     * @param number    sequence number of the segment
+     * @param size      size of the file
+     * @param lastId    highest id handed out so far
+     * @return new, empty segment
+     * @throws IOException When the file cannot be created
+     */
+    static Segment create(File directory, long number, int size, long lastId) throws IOException {
+        File file = new File(directory, String.format("%s%020d%s", PREFIX, number, SUFFIX));
+        if (file.exists()) {
+            throw new IOException("Segment " + file + " already exists");
+        }
+        Segment segment = map(number, file, size);
+        segment.buffer.putLong(0, lastId);
+        return segment;
+    }
+
+    /**
+     * Map an existing segment and find the end of its records
+     *
+     * @param file segment file
+     * @return the segment, with its write position after the last complete record
+     * @throws IOException When the file cannot be mapped
+     */
+    static Segment open(File file) throws IOException {
+        String name = file.getName();
+        long number = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        Segment segment = map(number, file, (int) file.length());
+        while (true) {
+            TweetRecord record = TweetRecord.read(segment.buffer, segment.position);
+            if (record == null) {
+                break;
+            }
+            segment.position += record.size();
+        }
+        return segment;
+    }
+
+    /**
+     * Clear whatever follows the last complete record, the remains of a record torn by a crash, so that the records
+     * appended after reopening are not followed by them
+     */
+    void clearTail() {
+        int end = position;
+        for (int offset = position; offset < buffer.capacity(); offset++) {
+            if (buffer.get(offset) != 0) {
+                end = offset + 1;
+            }
+        }
+        for (int offset = position; offset < end; offset++) {
+            buffer.put(offset, (byte) 0);
+        }
+    }
+
+    static boolean isSegment(File file) {
+        return file.isFile() && file.getName().startsWith(PREFIX) && file.getName().endsWith(SUFFIX);
+    }
+
+    private static Segment map(long number, File file, int size) throws IOException {
+        if (size <= HEADER_SIZE) {
+            throw new IOException("Segment " + file + " is too small");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new Segment(number, file, raf, buffer);
+        } catch (IOException ex) {
+            raf.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param record record to write
+     * @return offset of the record, or -1 when it does not fit
+     */
+    int append(TweetRecord record) {
+        if (position + record.size() > buffer.capacity()) {
+            return -1;
+        }
+        ByteBuffer target = buffer.duplicate();
+        target.position(position);
+        record.writeTo(target);
+        int offset = position;
+        position = target.position();
+        return offset;
+    }
+
+    TweetRecord read(int offset) {
+        return TweetRecord.read(buffer, offset);
+    }
+
+    /**
+     * Call the consumer with every record of the segment and its offset, in write order
+     */
+    void forEach(ObjIntConsumer<TweetRecord> consumer) {
+        int offset = HEADER_SIZE;
+        while (offset < position) {
+            TweetRecord record = read(offset);
+            consumer.accept(record, offset);
+            offset += record.size();
+        }
+    }
+
+    long getNumber() {
+        return number;
+    }
+
+    long getLastId() {
+        return buffer.getLong(0);
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    int getWrittenBytes() {
+        return position - HEADER_SIZE;
+    }
+
+    long getLiveBytes() {
+        return liveBytes;
+    }
+
+    void addLiveBytes(long bytes) {
+        liveBytes += bytes;
+    }
+
+    void flush() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        flush();
+        raf.close();
+    }
+
+    /**
+     * Close and remove the file. The mapping itself is released once the buffer is garbage collected.
+     *
+     * @throws IOException When the file cannot be removed
+     */
+    void delete() throws IOException {
+        raf.close();
+        if (!file.delete()) {
+            throw new IOException("Cannot delete segment " + file);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.getName();
+    }
+}
@@ -0,0 +1,200 @@
+package com.scmspain.repositories.log;
+
+import com.scmspain.entities.Tweet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+/**
+ * Binary record of the log. Every record has the same fixed header, followed by the publisher and text bytes and a
+ * CRC32 of everything before it:
+ * <pre>
+ *  0 int   record length, trailer included
+ *  4 byte  type: PUT, DISCARD or DELETE
+ *  5 byte  flags: discarded, has publication date, has discard date, has migration status
+ *  6 long  id
+ * 14 long  publication date, epoch millis
+ * 22 long  discard date, epoch millis
+ * 30 long  pre-2015 migration status
+ * 38 short publisher length in bytes
+ * 40 int   text length in bytes
+ * 44       publisher and text, UTF-8
+ *    int   CRC32
+ * </pre>
+ * A PUT holds the whole tweet, a DISCARD only its id and discard date, and a DELETE only its id.
+ */
+final class TweetRecord {
+
+    static final byte PUT = 1;
+    static final byte DISCARD = 2;
+    static final byte DELETE = 3;
+
+    private static final int HEADER_SIZE = 44;
+    private static final int TRAILER_SIZE = 4;
+    private static final int DISCARDED = 1;
+    private static final int HAS_PUBLICATION_DATE = 1 << 1;
+    private static final int HAS_DISCARDED_DATE = 1 << 2;
+    private static final int HAS_MIGRATION_STATUS = 1 << 3;
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private final byte type;
+    private final long id;
+    private final boolean discarded;
+    private final Date publicationDate;
+    private final Date discardedDate;
+    private final Long migrationStatus;
+    private final byte[] publisher;
+    private final byte[] text;
+
+    private TweetRecord(byte type, long id, boolean discarded, Date publicationDate, Date discardedDate,
+                        Long migrationStatus, byte[] publisher, byte[] text) {
+        this.type = type;
+        this.id = id;
+        this.discarded = discarded;
+        this.publicationDate = publicationDate;
+        this.discardedDate = discardedDate;
+        this.migrationStatus = migrationStatus;
+        this.publisher = publisher;
+        this.text = text;
+    }
+
+    /**
+     * @param tweet tweet with its id
+     * @return record holding the whole tweet
+     * @throws IllegalArgumentException When the publisher or text is missing, or the publisher does not fit the
+     *                                  record
+     */
+    static TweetRecord put(Tweet tweet) throws IllegalArgumentException {
+        // an empty publisher or text is written the same way, so a missing one would not be missing once replayed
+        if (tweet.getPublisher() == null || tweet.getTweet() == null) {
+            throw new IllegalArgumentException("Publisher and text must not be null");
+        }
+        byte[] publisher = bytesOf(tweet.getPublisher());
+        if (publisher.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Publisher must not be longer than " + Short.MAX_VALUE + " bytes");
+        }
+        return new TweetRecord(PUT, tweet.getId(), tweet.getDiscarded(), tweet.getPublicationDate(),
+                tweet.getDiscardedDate(), tweet.getPre2015MigrationStatus(), publisher, bytesOf(tweet.getTweet()));
+    }
+
+    static TweetRecord discard(long id, Date discardedDate) {
+        return new TweetRecord(DISCARD, id, true, null, discardedDate, null, NO_BYTES, NO_BYTES);
+    }
+
+    static TweetRecord delete(long id) {
+        return new TweetRecord(DELETE, id, false, null, null, null, NO_BYTES, NO_BYTES);
+    }
+
+    /**
+     * @param buffer segment contents
+     * @param offset position of the record
+     * @return the record, or null when there is no complete record at that position: the end of the written part
+     * of the segment, or a record torn by a crash
+     */
+    static TweetRecord read(ByteBuffer buffer, int offset) {
+        if (offset + HEADER_SIZE + TRAILER_SIZE > buffer.limit()) {
+            return null;
+        }
+        int size = buffer.getInt(offset);
+        if (size < HEADER_SIZE + TRAILER_SIZE || offset + size > buffer.limit()) {
+            return null;
+        }
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset).limit(offset + size);
+        record = record.slice();
+        CRC32 crc = new CRC32();
+        ByteBuffer checked = record.duplicate();
+        checked.limit(size - TRAILER_SIZE);
+        crc.update(checked);
+        if ((int) crc.getValue() != record.getInt(size - TRAILER_SIZE)) {
+            return null;
+        }
+        byte type = record.get(4);
+        int flags = record.get(5);
+        byte[] publisher = new byte[record.getShort(38)];
+        byte[] text = new byte[record.getInt(40)];
+        if (type < PUT || type > DELETE || HEADER_SIZE + publisher.length + text.length + TRAILER_SIZE != size) {
+            return null;
+        }
+        record.position(HEADER_SIZE);
+        record.get(publisher);
+        record.get(text);
+        return new TweetRecord(type, record.getLong(6), (flags & DISCARDED) != 0,
+                (flags & HAS_PUBLICATION_DATE) != 0 ? new Date(record.getLong(14)) : null,
+                (flags & HAS_DISCARDED_DATE) != 0 ? new Date(record.getLong(22)) : null,
+                (flags & HAS_MIGRATION_STATUS) != 0 ? record.getLong(30) : null,
+                publisher, text);
+    }
+
+    int size() {
+        return HEADER_SIZE + publisher.length + text.length + TRAILER_SIZE;
+    }
+
+    /**
+     * Write the record at the position of the buffer, moving it past the record
+     *
+     * @param buffer segment contents, with at least {@link #size()} bytes remaining
+     */
+    void writeTo(ByteBuffer buffer) {
+        ByteBuffer record = buffer.slice();
+        int flags = (discarded ? DISCARDED : 0)
+                | (publicationDate != null ? HAS_PUBLICATION_DATE : 0)
+                | (discardedDate != null ? HAS_DISCARDED_DATE : 0)
+                | (migrationStatus != null ? HAS_MIGRATION_STATUS : 0);
+        record.putInt(size())
+                .put(type)
+                .put((byte) flags)
+                .putLong(id)
+                .putLong(publicationDate != null ? publicationDate.getTime() : 0)
+                .putLong(discardedDate != null ? discardedDate.getTime() : 0)
+                .putLong(migrationStatus != null ? migrationStatus : 0)
+                .putShort((short) publisher.length)
+                .putInt(text.length)
+                .put(publisher)
+                .put(text);
+        CRC32 crc = new CRC32();
+        ByteBuffer checked = record.duplicate();
+        checked.flip();
+        crc.update(checked);
+        record.putInt((int) crc.getValue());
+        buffer.position(buffer.position() + size());
+    }
+
+    byte getType() {
+        return type;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    boolean isDiscarded() {
+        return discarded;
+    }
+
+    Date getPublicationDate() {
+        return publicationDate;
+    }
+
+    Date getDiscardedDate() {
+        return discardedDate;
+    }
+
+    String getPublisher() {
+        return new String(publisher, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the tweet of a PUT record
+     */
+    Tweet toTweet() {
+        return new Tweet(id, getPublisher(), new String(text, StandardCharsets.UTF_8), discarded, publicationDate,
+                discardedDate, migrationStatus);
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,7 @@
+package com.scmspain.services;
+
+public enum DiscardOutcome {
+    DISCARDED,
+    ALREADY_DISCARDED,
+    NOT_FOUND
+}
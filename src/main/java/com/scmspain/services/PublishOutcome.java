@@ -0,0 +1,39 @@
+package com.scmspain.services;
+
+import com.scmspain.entities.Tweet;
+
+public class PublishOutcome {
+    private final Tweet tweet;
+    private final IllegalArgumentException error;
+
+    private PublishOutcome(Tweet tweet, IllegalArgumentException error) {
+        this.tweet = tweet;
+        this.error = error;
+    }
+
+    public static PublishOutcome published(Tweet tweet) {
+        return new PublishOutcome(tweet, null);
+    }
+
+    public static PublishOutcome rejected(IllegalArgumentException error) {
+        return new PublishOutcome(null, error);
+    }
+
+    public boolean isPublished() {
+        return error == null;
+    }
+
+    /**
+     * @return id of the published tweet, null when it was rejected
+     */
+    public Long getId() {
+        return tweet == null ? null : tweet.getId();
+    }
+
+    /**
+     * @return reason why the tweet was rejected, null when it was published
+     */
+    public IllegalArgumentException getError() {
+        return error;
+    }
+}
@@ -0,0 +1,81 @@
+package com.scmspain.services;
+
+import java.util.Date;
+import java.util.Objects;
+
+public final class TweetCursor {
+
+    private static final char SEPARATOR = '_';
+
+    private final Date date;
+    private final Long id;
+
+    private TweetCursor(Date date, Long id) {
+        this.date = date;
+        this.id = id;
+    }
+
+    /**
+     * Build a cursor pointing to the given position of a listing
+     *
+     * @param date sort date of the last returned tweet
+     * @param id   id of the last returned tweet
+     * @return cursor for the next page
+     */
+    public static TweetCursor of(Date date, Long id) {
+        return new TweetCursor(Objects.requireNonNull(date), Objects.requireNonNull(id));
+    }
+
+    /**
+     * Decode a cursor token as generated by {@link #toToken()}
+     *
+     * @param token opaque cursor token, may be null
+     * @return decoded cursor, or null when no token is given
+     * @throws IllegalArgumentException When the token is malformed
+     */
+    public static TweetCursor parse(String token) throws IllegalArgumentException {
+        if (token == null) {
+            return null;
+        }
+        int separator = token.indexOf(SEPARATOR);
+        if (separator <= 0 || separator == token.length() - 1) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        try {
+            long millis = Long.parseLong(token.substring(0, separator), Character.MAX_RADIX);
+            long id = Long.parseLong(token.substring(separator + 1), Character.MAX_RADIX);
+            return new TweetCursor(new Date(millis), id);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+    }
+
+    public String toToken() {
+        return Long.toString(date.getTime(), Character.MAX_RADIX) + SEPARATOR + Long.toString(id, Character.MAX_RADIX);
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TweetCursor that = (TweetCursor) o;
+        return date.equals(that.date) && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(date, id);
+    }
+}
@@ -1,42 +1,95 @@
 package com.scmspain.services;
 
 import com.scmspain.entities.Tweet;
+import com.scmspain.events.TweetDiscardedEvent;
+import com.scmspain.events.TweetPublishedEvent;
 import com.scmspain.repositories.TweetRepository;
+import com.scmspain.services.archive.TweetArchive;
+import com.scmspain.services.metrics.Counter;
+import com.scmspain.services.metrics.CounterRegistry;
+import com.scmspain.services.ratelimit.PublisherRateLimiter;
+import com.scmspain.services.ratelimit.RateLimitExceededException;
+import com.scmspain.services.search.TweetSearchIndex;
+import com.scmspain.services.timeline.PublisherTimelineCache;
+import com.scmspain.services.timeline.TweetTimelineCache;
+import com.scmspain.services.writebehind.WriteBehindPublisher;
 import com.scmspain.utils.TweetValidator;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.boot.actuate.metrics.writer.Delta;
-import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
-import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
 public class TweetService {
 
-    private MetricWriter metricWriter;
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int MAX_BATCH_SIZE = 1000;
+
+    private Counter publishedTweets;
+    private Counter queriedTweets;
+    private Counter discardedTweets;
     private TweetRepository tweetRepository;
     private TweetValidator tweetValidator;
+    private TweetTimelineCache timelineCache;
+    private PublisherTimelineCache publisherCache;
+    private ApplicationEventPublisher eventPublisher;
+    private WriteBehindPublisher writeBehindPublisher;
+    private TweetArchive archive;
+    private TweetSearchIndex searchIndex;
+    private PublisherRateLimiter rateLimiter;
 
     @Autowired
-    public TweetService(@Qualifier("scm") MetricWriter metricWriter, TweetRepository tweetRepository, TweetValidator tweetValidator) {
-        this.metricWriter = metricWriter;
+    public TweetService(CounterRegistry counterRegistry, TweetRepository tweetRepository, TweetValidator tweetValidator,
+                        TweetTimelineCache timelineCache, PublisherTimelineCache publisherCache,
+                        ApplicationEventPublisher eventPublisher,
+                        WriteBehindPublisher writeBehindPublisher, TweetArchive archive,
+                        TweetSearchIndex searchIndex, PublisherRateLimiter rateLimiter) {
+        this.publishedTweets = counterRegistry.counter("times-published-tweets");
+        this.queriedTweets = counterRegistry.counter("times-queried-tweets");
+        this.discardedTweets = counterRegistry.counter("times-discarded-tweets");
         this.tweetRepository = tweetRepository;
         this.tweetValidator = tweetValidator;
+        this.timelineCache = timelineCache;
+        this.publisherCache = publisherCache;
+        this.eventPublisher = eventPublisher;
+        this.writeBehindPublisher = writeBehindPublisher;
+        this.archive = archive;
+        this.searchIndex = searchIndex;
+        this.rateLimiter = rateLimiter;
     }
 
     /**
-     * Push tweet to repository
+     * Push tweet to repository, or to the write-behind queue when enabled
      *
      * @param publisher Tweet creator
      * @param text      Tweet content
+     * @throws RejectedExecutionException When the write-behind queue is full
+     * @throws RateLimitExceededException When the publisher is over its rate limit
      */
-    public void publishTweet(String publisher, String text) {
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void publishTweet(String publisher, String text) throws RejectedExecutionException, RateLimitExceededException {
 
         Tweet tweet = new Tweet();
         tweet.setTweet(text);
@@ -45,9 +98,61 @@ public class TweetService {
         tweet.setPublicationDate(new Date());
 
         tweetValidator.validate(tweet);
+        rateLimiter.acquire(publisher, 1);
+
+        if (writeBehindPublisher.isEnabled()) {
+            writeBehindPublisher.enqueue(tweet);
+            publishedTweets.increment();
+            return;
+        }
 
-        metricWriter.increment(new Delta<Number>("times-published-tweets", 1));
+        publishedTweets.increment();
         tweetRepository.save(tweet);
+        eventPublisher.publishEvent(new TweetPublishedEvent(tweet));
+    }
+
+    /**
+     * Push a batch of tweets to repository in a single transaction
+     *
+     * @param tweets unsaved tweets holding publisher and content
+     * @return outcome of every tweet, in the same order
+     * @throws IllegalArgumentException   When the batch is bigger than the limit, or holds more tweets of one
+     *                                    publisher than its rate limit burst
+     * @throws RateLimitExceededException When a publisher of the valid tweets is over its rate limit; no tokens
+     *                                    are taken for any publisher of the batch
+     */
+    public List<PublishOutcome> publishTweets(List<Tweet> tweets) throws IllegalArgumentException, RateLimitExceededException {
+        if (tweets.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch must not be greater than " + MAX_BATCH_SIZE + " tweets");
+        }
+
+        Date publicationDate = new Date();
+        List<PublishOutcome> outcomes = new ArrayList<>(tweets.size());
+        List<Tweet> validTweets = new ArrayList<>(tweets.size());
+        for (Tweet tweet : tweets) {
+            tweet.setDiscarded(false);
+            tweet.setPublicationDate(publicationDate);
+            try {
+                tweetValidator.validate(tweet);
+                validTweets.add(tweet);
+                outcomes.add(PublishOutcome.published(tweet));
+            } catch (IllegalArgumentException ex) {
+                outcomes.add(PublishOutcome.rejected(ex));
+            }
+        }
+
+        if (rateLimiter.isEnabled()) {
+            rateLimiter.acquire(validTweets.stream()
+                    .collect(Collectors.groupingBy(Tweet::getPublisher, LinkedHashMap::new,
+                            Collectors.summingInt(tweet -> 1))));
+        }
+
+        if (!validTweets.isEmpty()) {
+            publishedTweets.add(validTweets.size());
+            tweetRepository.save(validTweets);
+            validTweets.forEach(tweet -> eventPublisher.publishEvent(new TweetPublishedEvent(tweet)));
+        }
+        return outcomes;
     }
 
     /**
@@ -56,8 +161,13 @@ public class TweetService {
      * @param id id of the Tweet to retrieve
      * @return retrieved Tweet
      */
+    @Transactional(readOnly = true)
     public Tweet getTweet(Long id) {
-        return tweetRepository.findOne(id);
+        Tweet tweet = tweetRepository.findOne(id);
+        if (tweet == null && archive.isEnabled()) {
+            return archive.find(id);
+        }
+        return tweet;
     }
 
     /**
@@ -65,9 +175,13 @@ public class TweetService {
      *
      * @return Tweet list
      */
+    @Transactional(readOnly = true)
     public List<Tweet> listAllTweets() {
-        metricWriter.increment(new Delta<Number>("times-queried-tweets", 1));
-        return tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDesc();
+        queriedTweets.increment();
+        return timelineCache.allPublished().orElseGet(() -> {
+            List<Tweet> tweets = tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDesc();
+            return archive.isEnabled() ? archive.withArchivedPublished(tweets) : tweets;
+        });
     }
 
     /**
@@ -75,25 +189,260 @@ public class TweetService {
      *
      * @return Tweet list
      */
+    @Transactional(readOnly = true)
     public List<Tweet> listAllDiscardedTweets() {
-        metricWriter.increment(new Delta<Number>("times-queried-tweets", 1));
-        return tweetRepository.findAllByDiscardedTrueOrderByDiscardedDateDesc();
+        queriedTweets.increment();
+        return timelineCache.allDiscarded().orElseGet(() -> {
+            List<Tweet> tweets = tweetRepository.findAllByDiscardedTrueOrderByDiscardedDateDesc();
+            return archive.isEnabled() ? archive.withArchivedDiscarded(tweets) : tweets;
+        });
     }
 
     /**
-     * Discard a tweet from repository
+     * Stream all tweets from repository without holding them in memory
+     *
+     * @param consumer receives every published tweet, newest first
+     */
+    @Transactional(readOnly = true)
+    public void streamAllTweets(Consumer<Tweet> consumer) {
+        queriedTweets.increment();
+        Optional<List<Tweet>> cached = timelineCache.allPublished();
+        if (cached.isPresent()) {
+            cached.get().forEach(consumer);
+            return;
+        }
+        try (Stream<Tweet> tweets = tweetRepository.streamAllPublished()) {
+            tweets.forEach(consumer);
+        }
+        if (archive.isEnabled()) {
+            archive.streamPublished(consumer);
+        }
+    }
+
+    /**
+     * Stream all discarded tweets from repository without holding them in memory
+     *
+     * @param consumer receives every discarded tweet, last discarded first
+     */
+    @Transactional(readOnly = true)
+    public void streamAllDiscardedTweets(Consumer<Tweet> consumer) {
+        queriedTweets.increment();
+        Optional<List<Tweet>> cached = timelineCache.allDiscarded();
+        if (cached.isPresent()) {
+            cached.get().forEach(consumer);
+            return;
+        }
+        try (Stream<Tweet> tweets = tweetRepository.streamAllDiscarded()) {
+            tweets.forEach(consumer);
+        }
+        if (archive.isEnabled()) {
+            archive.streamDiscarded(consumer);
+        }
+    }
+
+    /**
+     * List a page of published tweets from repository, newest first
+     *
+     * @param after cursor of the last tweet of the previous page, null for the first page
+     * @param limit maximum number of tweets to return
+     * @return Tweet list
+     * @throws IllegalArgumentException When limit is out of bounds
+     */
+    @Transactional(readOnly = true)
+    public List<Tweet> listTweets(TweetCursor after, int limit) throws IllegalArgumentException {
+        PageRequest page = pageOf(limit);
+        queriedTweets.increment();
+        Optional<List<Tweet>> cached = timelineCache.publishedPage(after, limit);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        List<Tweet> tweets = after == null
+                ? tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(page)
+                : tweetRepository.findPublishedAfterCursor(after.getDate(), after.getId(), page);
+        return archive.isEnabled() ? archive.continuePublished(tweets, after, limit) : tweets;
+    }
+
+    /**
+     * List a page of published tweets of one publisher from repository, newest first
+     *
+     * @param publisher publisher of the tweets
+     * @param after     cursor of the last tweet of the previous page, null for the first page
+     * @param limit     maximum number of tweets to return
+     * @return Tweet list
+     * @throws IllegalArgumentException When limit is out of bounds
+     */
+    @Transactional(readOnly = true)
+    public List<Tweet> listTweetsByPublisher(String publisher, TweetCursor after, int limit) throws IllegalArgumentException {
+        PageRequest page = pageOf(limit);
+        queriedTweets.increment();
+        Optional<List<Tweet>> cached = publisherCache.publishedPage(publisher, after, limit);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        List<Tweet> tweets = after == null
+                ? tweetRepository.findPublishedByPublisher(publisher, page)
+                : tweetRepository.findPublishedByPublisherAfterCursor(publisher, after.getDate(), after.getId(), page);
+        return archive.isEnabled() ? archive.continuePublishedBy(publisher, tweets, after, limit) : tweets;
+    }
+
+    /**
+     * List a page of discarded tweets from repository, last discarded first
+     *
+     * @param after cursor of the last tweet of the previous page, null for the first page
+     * @param limit maximum number of tweets to return
+     * @return Tweet list
+     * @throws IllegalArgumentException When limit is out of bounds
+     */
+    @Transactional(readOnly = true)
+    public List<Tweet> listDiscardedTweets(TweetCursor after, int limit) throws IllegalArgumentException {
+        PageRequest page = pageOf(limit);
+        queriedTweets.increment();
+        Optional<List<Tweet>> cached = timelineCache.discardedPage(after, limit);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        List<Tweet> tweets = after == null
+                ? tweetRepository.findAllByDiscardedTrueOrderByDiscardedDateDescIdDesc(page)
+                : tweetRepository.findDiscardedAfterCursor(after.getDate(), after.getId(), page);
+        return archive.isEnabled() ? archive.continueDiscarded(tweets, after, limit) : tweets;
+    }
+
+    /**
+     * Search published tweets of the tweet table by words and publisher
+     *
+     * @param query     words the tweets must all contain, may be null when a publisher is given
+     * @param publisher publisher of the tweets, may be null when a query is given
+     * @param after     cursor of the last tweet of the previous page, null for the first page
+     * @param limit     maximum number of tweets to return
+     * @return matching tweets, newest first
+     * @throws IllegalArgumentException When search is disabled, neither words nor publisher are given, or the limit
+     *                                  is out of range
+     * @throws RejectedExecutionException When the search index is still being rebuilt
+     */
+    @Transactional(readOnly = true)
+    public List<Tweet> searchTweets(String query, String publisher, TweetCursor after, int limit) throws IllegalArgumentException {
+        pageOf(limit);
+        if (!searchIndex.isEnabled()) {
+            throw new IllegalArgumentException("Search is disabled");
+        }
+        Set<String> terms = query == null ? Collections.emptySet() : TweetSearchIndex.terms(query);
+        if (terms.isEmpty() && publisher == null) {
+            throw new IllegalArgumentException("Search needs words or a publisher");
+        }
+        queriedTweets.increment();
+
+        List<Tweet> page = new ArrayList<>();
+        Long before = after == null ? null : after.getId();
+        while (page.size() < limit) {
+            int wanted = limit - page.size();
+            long[] ids = searchIndex.search(terms, publisher, before, wanted);
+            page.addAll(findPublishedInOrder(ids));
+            if (ids.length < wanted) {
+                break;
+            }
+            before = ids[ids.length - 1];
+        }
+        return page;
+    }
+
+    /**
+     * Discard a tweet from repository with a single conditional update
      *
      * @param id id of tweet to be removed
+     * @throws NoSuchElementException   When the tweet does not exist
+     * @throws IllegalArgumentException When the tweet is already discarded
      */
-    public void discardTweet(Long id) {
-        Tweet tweet = Optional.ofNullable(getTweet(id)).orElseThrow(() -> new NoSuchElementException("Tweet does not exits"));
-        if (tweet.getDiscarded()) {
+    public void discardTweet(Long id) throws NoSuchElementException, IllegalArgumentException {
+        Date discardedDate = new Date();
+        int discarded = tweetRepository.discard(id, discardedDate);
+        if (discarded == 0 && archive.isEnabled() && archive.restorePublished(Collections.singleton(id)) > 0) {
+            discarded = tweetRepository.discard(id, discardedDate);
+        }
+        if (discarded == 0) {
+            if (!exists(id)) {
+                throw new NoSuchElementException("Tweet does not exits");
+            }
             throw new IllegalArgumentException("Tweet already discarded");
         }
 
-        tweet.setDiscarded(true);
-        tweet.setDiscardedDate(new Date());
-        tweetRepository.save(tweet);
-        metricWriter.increment(new Delta<Number>("times-discarded-tweets", 1));
+        discardedTweets.increment();
+        eventPublisher.publishEvent(new TweetDiscardedEvent(id, discardedDate));
+    }
+
+    /**
+     * Discard a batch of tweets in a single transaction, with one update for all of them
+     *
+     * @param ids ids of the tweets to discard, may contain nulls and duplicates
+     * @return outcome of every id, in the same order; repeated ids are already discarded after their first occurrence
+     * @throws IllegalArgumentException When the batch is bigger than the limit
+     */
+    public List<DiscardOutcome> discardTweets(List<Long> ids) throws IllegalArgumentException {
+        if (ids.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch must not be greater than " + MAX_BATCH_SIZE + " tweets");
+        }
+
+        Set<Long> requested = ids.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+        Set<Long> existing = new HashSet<>();
+        Set<Long> toDiscard = new LinkedHashSet<>();
+        if (!requested.isEmpty()) {
+            if (archive.isEnabled()) {
+                archive.restorePublished(requested);
+                existing.addAll(archive.findArchived(requested));
+            }
+            for (Tweet tweet : tweetRepository.findAllForDiscard(requested)) {
+                existing.add(tweet.getId());
+                if (!tweet.getDiscarded()) {
+                    toDiscard.add(tweet.getId());
+                }
+            }
+        }
+
+        if (!toDiscard.isEmpty()) {
+            Date discardedDate = new Date();
+            discardedTweets.add(tweetRepository.discardAll(Collections.unmodifiableSet(toDiscard), discardedDate));
+            toDiscard.forEach(id -> eventPublisher.publishEvent(new TweetDiscardedEvent(id, discardedDate)));
+        }
+
+        List<DiscardOutcome> outcomes = new ArrayList<>(ids.size());
+        // a repeated id is only reported as discarded the first time
+        Set<Long> reported = new HashSet<>();
+        for (Long id : ids) {
+            if (id == null || !existing.contains(id)) {
+                outcomes.add(DiscardOutcome.NOT_FOUND);
+            } else if (toDiscard.contains(id) && reported.add(id)) {
+                outcomes.add(DiscardOutcome.DISCARDED);
+            } else {
+                outcomes.add(DiscardOutcome.ALREADY_DISCARDED);
+            }
+        }
+        return outcomes;
+    }
+
+    private List<Tweet> findPublishedInOrder(long[] ids) {
+        if (ids.length == 0) {
+            return Collections.emptyList();
+        }
+        List<Long> requested = LongStream.of(ids).boxed().collect(Collectors.toList());
+        Map<Long, Tweet> found = tweetRepository.findPublishedByIdIn(requested).stream()
+                .collect(Collectors.toMap(Tweet::getId, Function.identity()));
+        List<Tweet> ordered = new ArrayList<>(found.size());
+        for (long id : ids) {
+            Tweet tweet = found.get(id);
+            if (tweet != null) {
+                ordered.add(tweet);
+            }
+        }
+        return ordered;
+    }
+
+    private boolean exists(Long id) {
+        return tweetRepository.exists(id) || (archive.isEnabled() && !archive.findArchived(Collections.singleton(id)).isEmpty());
+    }
+
+    private PageRequest pageOf(int limit) throws IllegalArgumentException {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return new PageRequest(0, limit);
     }
 }
@@ -0,0 +1,182 @@
+package com.scmspain.services.archive;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.repositories.ArchivedTweetRepository;
+import com.scmspain.services.TweetCursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Read side of the tweet archive.
+ * <p>
+ * The archiver only moves published tweets older than a publication date cutoff and discarded tweets older
+ * than a discard date cutoff. The cutoffs move forward with time, and when a configuration change moves them back
+ * the archiver restores the archived tweets newer than them on startup. Every archived tweet therefore sorts after
+ * every tweet of the same listing still in the tweet table, and listings read the archive only once the tweet
+ * table is exhausted.
+ */
+@Component
+public class TweetArchive {
+
+    private ArchivedTweetRepository archivedTweetRepository;
+    private boolean enabled;
+
+    @Autowired
+    public TweetArchive(ArchivedTweetRepository archivedTweetRepository,
+                        @Value("${tweets.archive.enabled:false}") boolean enabled) {
+        this.archivedTweetRepository = archivedTweetRepository;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Complete a page of published tweets read from the tweet table with archived ones
+     *
+     * @param page  tweets read from the tweet table
+     * @param after cursor the page was read after, null for the first page
+     * @param limit requested page size
+     * @return the page, filled up to limit from the archive when the tweet table ran out
+     */
+    public List<Tweet> continuePublished(List<Tweet> page, TweetCursor after, int limit) {
+        return continuePage(page, after, limit, Tweet::getPublicationDate,
+                archivedTweetRepository::findPublished, archivedTweetRepository::findPublishedAfterCursor);
+    }
+
+    /**
+     * Complete a page of discarded tweets read from the tweet table with archived ones
+     *
+     * @param page  tweets read from the tweet table
+     * @param after cursor the page was read after, null for the first page
+     * @param limit requested page size
+     * @return the page, filled up to limit from the archive when the tweet table ran out
+     */
+    public List<Tweet> continueDiscarded(List<Tweet> page, TweetCursor after, int limit) {
+        return continuePage(page, after, limit, Tweet::getDiscardedDate,
+                archivedTweetRepository::findDiscarded, archivedTweetRepository::findDiscardedAfterCursor);
+    }
+
+    /**
+     * Complete a page of published tweets of one publisher read from the tweet table with archived ones
+     *
+     * @param publisher publisher of the tweets
+     * @param page      tweets read from the tweet table
+     * @param after     cursor the page was read after, null for the first page
+     * @param limit     requested page size
+     * @return the page, filled up to limit from the archive when the tweet table ran out
+     */
+    public List<Tweet> continuePublishedBy(String publisher, List<Tweet> page, TweetCursor after, int limit) {
+        return continuePage(page, after, limit, Tweet::getPublicationDate,
+                rest -> archivedTweetRepository.findPublishedByPublisher(publisher, rest),
+                (date, id, rest) -> archivedTweetRepository.findPublishedByPublisherAfterCursor(publisher, date, id, rest));
+    }
+
+    /**
+     * @param tweets every published tweet of the tweet table
+     * @return the same tweets followed by the archived ones
+     */
+    public List<Tweet> withArchivedPublished(List<Tweet> tweets) {
+        return concat(tweets, archivedTweetRepository.streamPublished());
+    }
+
+    /**
+     * @param tweets every discarded tweet of the tweet table
+     * @return the same tweets followed by the archived ones
+     */
+    public List<Tweet> withArchivedDiscarded(List<Tweet> tweets) {
+        return concat(tweets, archivedTweetRepository.streamDiscarded());
+    }
+
+    public void streamPublished(Consumer<Tweet> consumer) {
+        try (Stream<Tweet> tweets = archivedTweetRepository.streamPublished()) {
+            tweets.forEach(consumer);
+        }
+    }
+
+    public void streamDiscarded(Consumer<Tweet> consumer) {
+        try (Stream<Tweet> tweets = archivedTweetRepository.streamDiscarded()) {
+            tweets.forEach(consumer);
+        }
+    }
+
+    /**
+     * @param id tweet id
+     * @return the archived tweet, or null when it is not archived
+     */
+    public Tweet find(Long id) {
+        return archivedTweetRepository.findTweet(id);
+    }
+
+    /**
+     * @param ids tweet ids
+     * @return the ids that are in the archive
+     */
+    public Set<Long> findArchived(Collection<Long> ids) {
+        return new HashSet<>(archivedTweetRepository.findExistingIds(ids));
+    }
+
+    /**
+     * Move archived tweets that are not discarded back to the tweet table, so they can be discarded there.
+     * Must run inside the discarding transaction.
+     *
+     * @param ids tweet ids, archived or not
+     * @return number of restored tweets
+     */
+    public int restorePublished(Collection<Long> ids) {
+        int restored = archivedTweetRepository.copyPublishedToTweets(ids);
+        if (restored > 0) {
+            archivedTweetRepository.deletePublished(ids);
+        }
+        return restored;
+    }
+
+    private static List<Tweet> continuePage(List<Tweet> page, TweetCursor after, int limit,
+                                            Function<Tweet, Date> sortDate,
+                                            Function<PageRequest, List<Tweet>> first,
+                                            ArchiveSeek seek) {
+        if (page.size() >= limit) {
+            return page;
+        }
+        PageRequest rest = new PageRequest(0, limit - page.size());
+        TweetCursor cursor = page.isEmpty() ? after : cursorOf(page.get(page.size() - 1), sortDate);
+        List<Tweet> archived = cursor == null ? first.apply(rest) : seek.find(cursor.getDate(), cursor.getId(), rest);
+        if (archived.isEmpty()) {
+            return page;
+        }
+        List<Tweet> result = new ArrayList<>(page.size() + archived.size());
+        result.addAll(page);
+        result.addAll(archived);
+        return result;
+    }
+
+    private static TweetCursor cursorOf(Tweet tweet, Function<Tweet, Date> sortDate) {
+        return TweetCursor.of(sortDate.apply(tweet), tweet.getId());
+    }
+
+    private static List<Tweet> concat(List<Tweet> tweets, Stream<Tweet> archived) {
+        List<Tweet> result = new ArrayList<>(tweets);
+        try (Stream<Tweet> stream = archived) {
+            stream.forEach(result::add);
+        }
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface ArchiveSeek {
+        List<Tweet> find(Date date, Long id, PageRequest page);
+    }
+}
@@ -0,0 +1,172 @@
+package com.scmspain.services.archive;
+
+import com.scmspain.entities.ArchivedTweet;
+import com.scmspain.entities.Tweet;
+import com.scmspain.repositories.ArchivedTweetRepository;
+import com.scmspain.repositories.TweetRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Moves old tweets from the tweet table to the archive table every interval-ms: published tweets from months
+ * before the last published-months, and discarded tweets discarded in months before the last discarded-months.
+ * Cutoffs fall on month boundaries, so the tweet table holds whole recent months and the archive whole older
+ * ones. Rows move in transactions of at most batch-size tweets.
+ * <p>
+ * Raising published-months or discarded-months moves a cutoff back past tweets that are already archived, so on
+ * startup the archived tweets newer than the cutoffs are moved back to the tweet table before anything is archived.
+ */
+@Component
+public class TweetArchiver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TweetArchiver.class);
+
+    private TweetRepository tweetRepository;
+    private ArchivedTweetRepository archivedTweetRepository;
+    private TransactionTemplate transactionTemplate;
+    private Clock clock;
+    private boolean enabled;
+    private int publishedMonths;
+    private int discardedMonths;
+    private int batchSize;
+    private long intervalMillis;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public TweetArchiver(TweetRepository tweetRepository, ArchivedTweetRepository archivedTweetRepository,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${tweets.archive.enabled:false}") boolean enabled,
+                         @Value("${tweets.archive.published-months:12}") int publishedMonths,
+                         @Value("${tweets.archive.discarded-months:1}") int discardedMonths,
+                         @Value("${tweets.archive.batch-size:500}") int batchSize,
+                         @Value("${tweets.archive.interval-ms:3600000}") long intervalMillis) {
+        if (publishedMonths < 0 || discardedMonths < 0 || batchSize < 1 || intervalMillis < 1) {
+            throw new IllegalArgumentException("Archive months must not be negative, batch size and interval must be positive");
+        }
+        this.tweetRepository = tweetRepository;
+        this.archivedTweetRepository = archivedTweetRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clock = Clock.systemDefaultZone();
+        this.enabled = enabled;
+        this.publishedMonths = publishedMonths;
+        this.discardedMonths = discardedMonths;
+        this.batchSize = batchSize;
+        this.intervalMillis = intervalMillis;
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        int restored = restore();
+        if (restored > 0) {
+            LOGGER.info("Restored {} archived tweets newer than the archive cutoffs", restored);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tweet-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::archiveSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Archive every tweet past the cutoffs
+     *
+     * @return number of archived tweets
+     */
+    public int archive() {
+        Date publishedBefore = monthsAgo(publishedMonths);
+        Date discardedBefore = monthsAgo(discardedMonths);
+        int total = 0;
+        int moved;
+        do {
+            moved = transactionTemplate.execute(status -> archiveBatch(publishedBefore, discardedBefore));
+            total += moved;
+        } while (moved == batchSize);
+        return total;
+    }
+
+    /**
+     * Move the archived tweets newer than the cutoffs back to the tweet table, so that every archived tweet sorts
+     * after the tweets of the same listing in the tweet table again
+     *
+     * @return number of restored tweets
+     */
+    public int restore() {
+        Date publishedBefore = monthsAgo(publishedMonths);
+        Date discardedBefore = monthsAgo(discardedMonths);
+        int total = 0;
+        int moved;
+        do {
+            moved = transactionTemplate.execute(status -> restoreBatch(publishedBefore, discardedBefore));
+            total += moved;
+        } while (moved == batchSize);
+        return total;
+    }
+
+    private int archiveBatch(Date publishedBefore, Date discardedBefore) {
+        List<Long> ids = tweetRepository.findAllForArchive(publishedBefore, discardedBefore, new PageRequest(0, batchSize))
+                .stream().map(Tweet::getId).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        archivedTweetRepository.copyFromTweets(ids);
+        return tweetRepository.deleteAllByIdIn(ids);
+    }
+
+    private int restoreBatch(Date publishedBefore, Date discardedBefore) {
+        List<Long> ids = archivedTweetRepository.findAllForRestore(publishedBefore, discardedBefore, new PageRequest(0, batchSize))
+                .stream().map(ArchivedTweet::getId).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        archivedTweetRepository.copyToTweets(ids);
+        return archivedTweetRepository.deleteAllByIdIn(ids);
+    }
+
+    private void archiveSafely() {
+        try {
+            int archived = archive();
+            if (archived > 0) {
+                LOGGER.info("Archived {} tweets", archived);
+            }
+        } catch (RuntimeException ex) {
+            LOGGER.error("Could not archive tweets", ex);
+        }
+    }
+
+    private Date monthsAgo(int months) {
+        LocalDate firstDayOfMonth = LocalDate.now(clock).withDayOfMonth(1).minusMonths(months);
+        return Date.from(firstDayOfMonth.atStartOfDay(clock.getZone()).toInstant());
+    }
+}
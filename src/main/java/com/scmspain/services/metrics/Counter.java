@@ -0,0 +1,57 @@
+package com.scmspain.services.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter cheap enough for request threads: updates do not allocate nor contend.
+ */
+public final class Counter {
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private long exported;
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long delta) {
+        count.add(delta);
+    }
+
+    /**
+     * @return total count since startup
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Must only be called by the exporter, which is serialized by the registry
+     *
+     * @return count added since the previous call
+     */
+    long takeUnexported() {
+        long total = count.sum();
+        long delta = total - exported;
+        exported = total;
+        return delta;
+    }
+
+    /**
+     * Hand back a delta the exporter could not push, so the next export includes it
+     *
+     * @param delta value returned by {@link #takeUnexported()}
+     */
+    void returnUnexported(long delta) {
+        exported -= delta;
+    }
+}
@@ -0,0 +1,106 @@
+package com.scmspain.services.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.Delta;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Named counters updated in memory by request threads and pushed to the scm metric writer by a background
+ * exporter every export-interval-ms. The running totals are also published on the actuator metrics endpoint.
+ */
+@Component
+public class CounterRegistry implements PublicMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CounterRegistry.class);
+
+    private MetricWriter metricWriter;
+    private long exportIntervalMillis;
+    private ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private ScheduledExecutorService exporter;
+
+    @Autowired
+    public CounterRegistry(@Qualifier("scm") MetricWriter metricWriter,
+                           @Value("${tweets.metrics.export-interval-ms:1000}") long exportIntervalMillis) {
+        if (exportIntervalMillis < 1) {
+            throw new IllegalArgumentException("Metrics export interval must be positive");
+        }
+        this.metricWriter = metricWriter;
+        this.exportIntervalMillis = exportIntervalMillis;
+    }
+
+    /**
+     * Look up a counter, creating it on first use. Callers should keep the returned counter instead of
+     * looking it up on every update.
+     *
+     * @param name metric name
+     * @return counter registered under the name
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>(counters.size());
+        for (Counter counter : counters.values()) {
+            metrics.add(new Metric<Number>(counter.getName(), counter.count()));
+        }
+        return metrics;
+    }
+
+    @PostConstruct
+    public void start() {
+        exporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exporter.scheduleWithFixedDelay(this::export, exportIntervalMillis, exportIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the exporter and push whatever was counted since its last run
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        exporter.shutdown();
+        exporter.awaitTermination(exportIntervalMillis, TimeUnit.MILLISECONDS);
+        export();
+    }
+
+    /**
+     * Push to the metric writer what every counter added since the previous export
+     */
+    synchronized void export() {
+        for (Counter counter : counters.values()) {
+            long delta = counter.takeUnexported();
+            if (delta == 0) {
+                continue;
+            }
+            try {
+                metricWriter.increment(new Delta<Number>(counter.getName(), delta));
+            } catch (RuntimeException ex) {
+                counter.returnUnexported(delta);
+                LOGGER.warn("Could not export metric {}, will retry", counter.getName(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.scmspain.services.metrics;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Times every call to the application's controllers, services and repositories into a timer named
+ * &lt;stage&gt;.&lt;type&gt;.&lt;method&gt;, where stage is controller, service or repository.
+ * <p>
+ * Beans that are already proxied, like transactional services and repositories, get the timing advice
+ * added first in their chain, so the time spent committing is included.
+ */
+@Component
+public class MethodTimingPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+    private static final String APPLICATION_PACKAGE = "com.scmspain.";
+
+    private BeanFactory beanFactory;
+    private volatile TimerRegistry timerRegistry;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        String prefix = timerPrefix(bean);
+        if (prefix == null) {
+            return bean;
+        }
+        MethodInterceptor interceptor = new TimingInterceptor(prefix);
+        if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+            ((Advised) bean).addAdvice(0, interceptor);
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(interceptor);
+        return proxyFactory.getProxy(ClassUtils.getDefaultClassLoader());
+    }
+
+    private static String timerPrefix(Object bean) {
+        if (bean instanceof Repository) {
+            for (Class<?> type : ClassUtils.getAllInterfaces(bean)) {
+                if (type.getName().startsWith(APPLICATION_PACKAGE)) {
+                    return "repository." + type.getSimpleName();
+                }
+            }
+            return null;
+        }
+        Class<?> type = ClassUtils.getUserClass(bean);
+        if (!type.getName().startsWith(APPLICATION_PACKAGE)) {
+            return null;
+        }
+        if (AnnotationUtils.findAnnotation(type, RestController.class) != null) {
+            return "controller." + type.getSimpleName();
+        }
+        if (AnnotationUtils.findAnnotation(type, Service.class) != null) {
+            return "service." + type.getSimpleName();
+        }
+        return null;
+    }
+
+    private TimerRegistry timerRegistry() {
+        TimerRegistry registry = timerRegistry;
+        if (registry == null) {
+            registry = beanFactory.getBean(TimerRegistry.class);
+            timerRegistry = registry;
+        }
+        return registry;
+    }
+
+    private class TimingInterceptor implements MethodInterceptor {
+
+        private final String prefix;
+        private final ConcurrentMap<Method, Timer> timers = new ConcurrentHashMap<>();
+
+        private TimingInterceptor(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Method method = invocation.getMethod();
+            if (ReflectionUtils.isObjectMethod(method)) {
+                return invocation.proceed();
+            }
+            long start = System.nanoTime();
+            try {
+                return invocation.proceed();
+            } finally {
+                timerFor(method).record(System.nanoTime() - start);
+            }
+        }
+
+        private Timer timerFor(Method method) {
+            Timer timer = timers.get(method);
+            if (timer == null) {
+                timer = timers.computeIfAbsent(method, key -> timerRegistry().timer(prefix + "." + key.getName()));
+            }
+            return timer;
+        }
+    }
+}
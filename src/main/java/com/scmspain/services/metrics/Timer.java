@@ -0,0 +1,54 @@
+package com.scmspain.services.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histogram of an operation. Recording is wait-free; percentiles are computed by the registry
+ * over fixed intervals, so they always describe the recent past.
+ */
+public final class Timer {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final String name;
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+    private Histogram interval;
+    private volatile TimerSnapshot snapshot = TimerSnapshot.EMPTY;
+
+    Timer(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param nanos duration of one execution
+     */
+    public void record(long nanos) {
+        recorder.recordValue(Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE_NANOS)));
+    }
+
+    /**
+     * @return statistics of the last completed interval
+     */
+    public TimerSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Must only be called by the registry, which serializes calls
+     *
+     * @return statistics of the interval that just ended
+     */
+    TimerSnapshot rollInterval() {
+        interval = recorder.getIntervalHistogram(interval);
+        snapshot = TimerSnapshot.of(interval);
+        return snapshot;
+    }
+}
@@ -0,0 +1,108 @@
+package com.scmspain.services.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Named latency timers. Every interval-ms a background thread computes each timer's count, p50, p95, p99 and
+ * max over the interval that just ended, sets them on the scm metric writer and serves them on the actuator
+ * metrics endpoint as timer.&lt;name&gt;.&lt;statistic&gt;.
+ */
+@Component
+public class TimerRegistry implements PublicMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimerRegistry.class);
+    private static final String PREFIX = "timer.";
+
+    private MetricWriter metricWriter;
+    private long intervalMillis;
+    private ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService roller;
+
+    @Autowired
+    public TimerRegistry(@Qualifier("scm") MetricWriter metricWriter,
+                         @Value("${tweets.metrics.latency-interval-ms:10000}") long intervalMillis) {
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException("Latency interval must be positive");
+        }
+        this.metricWriter = metricWriter;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Look up a timer, creating it on first use. Callers should keep the returned timer instead of
+     * looking it up on every execution.
+     *
+     * @param name metric name, prefixed by its stage, e.g. repository.TweetRepository.findOne
+     * @return timer registered under the name
+     */
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, Timer::new);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>(timers.size() * 5);
+        for (Timer timer : timers.values()) {
+            metrics.addAll(toMetrics(timer.getName(), timer.getSnapshot()));
+        }
+        return metrics;
+    }
+
+    @PostConstruct
+    public void start() {
+        roller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "latency-histograms");
+            thread.setDaemon(true);
+            return thread;
+        });
+        roller.scheduleAtFixedRate(this::rollIntervals, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        roller.shutdownNow();
+    }
+
+    /**
+     * Close the current interval of every timer and export its statistics
+     */
+    synchronized void rollIntervals() {
+        for (Timer timer : timers.values()) {
+            TimerSnapshot snapshot = timer.rollInterval();
+            try {
+                toMetrics(timer.getName(), snapshot).forEach(metricWriter::set);
+            } catch (RuntimeException ex) {
+                LOGGER.warn("Could not export latency of {}", timer.getName(), ex);
+            }
+        }
+    }
+
+    private static List<Metric<?>> toMetrics(String name, TimerSnapshot snapshot) {
+        List<Metric<?>> metrics = new ArrayList<>(5);
+        metrics.add(new Metric<Number>(PREFIX + name + ".count", snapshot.getCount()));
+        metrics.add(new Metric<Number>(PREFIX + name + ".p50", snapshot.getP50()));
+        metrics.add(new Metric<Number>(PREFIX + name + ".p95", snapshot.getP95()));
+        metrics.add(new Metric<Number>(PREFIX + name + ".p99", snapshot.getP99()));
+        metrics.add(new Metric<Number>(PREFIX + name + ".max", snapshot.getMax()));
+        return metrics;
+    }
+}
@@ -0,0 +1,58 @@
+package com.scmspain.services.metrics;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Execution count and latency percentiles, in milliseconds, of one interval.
+ */
+public final class TimerSnapshot {
+
+    static final TimerSnapshot EMPTY = new TimerSnapshot(0, 0, 0, 0, 0);
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final long count;
+    private final double p50;
+    private final double p95;
+    private final double p99;
+    private final double max;
+
+    private TimerSnapshot(long count, double p50, double p95, double p99, double max) {
+        this.count = count;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    static TimerSnapshot of(Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            return EMPTY;
+        }
+        return new TimerSnapshot(histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile(95) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                histogram.getMaxValue() / NANOS_PER_MILLI);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP95() {
+        return p95;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,234 @@
+package com.scmspain.services.ratelimit;
+
+import com.scmspain.services.metrics.Counter;
+import com.scmspain.services.metrics.CounterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-publisher token buckets: every publisher may publish burst tweets at once, and gets tokens back at
+ * tweets-per-second.
+ * <p>
+ * A bucket is a single number, the time at which it will be full again, moved forward by one emission interval per
+ * tweet with a compare-and-set, so publishing takes no lock. Buckets are spread over stripes of concurrent maps by
+ * publisher hash, so growing one stripe does not stall the others, and every eviction-interval-ms the buckets that
+ * are full again are removed one stripe at a time. A full bucket is no different from a new one, so only the
+ * publishers seen over the last refill period take memory.
+ */
+@Component
+public class PublisherRateLimiter implements PublicMetrics {
+
+    // time of a bucket removed by the evictor, which callers holding it must replace
+    private static final long EVICTED = Long.MIN_VALUE;
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private Counter rateLimitedTweets;
+    private boolean enabled;
+    private int burst;
+    private long emissionIntervalNanos;
+    private long evictionIntervalMillis;
+    private List<ConcurrentMap<String, AtomicLong>> stripes;
+    private LongSupplier nanoClock = System::nanoTime;
+    private ScheduledExecutorService evictor;
+
+    @Autowired
+    public PublisherRateLimiter(CounterRegistry counterRegistry,
+                                @Value("${tweets.rate-limit.enabled:false}") boolean enabled,
+                                @Value("${tweets.rate-limit.tweets-per-second:1}") double tweetsPerSecond,
+                                @Value("${tweets.rate-limit.burst:10}") int burst,
+                                @Value("${tweets.rate-limit.stripes:64}") int stripes,
+                                @Value("${tweets.rate-limit.eviction-interval-ms:60000}") long evictionIntervalMillis) {
+        if (tweetsPerSecond <= 0 || burst < 1 || stripes < 1 || evictionIntervalMillis < 1) {
+            throw new IllegalArgumentException("Rate limit, burst, stripes and eviction interval must be positive");
+        }
+        this.rateLimitedTweets = counterRegistry.counter("times-rate-limited-tweets");
+        this.enabled = enabled;
+        this.burst = burst;
+        this.emissionIntervalNanos = Math.max(1, Math.round(NANOS_PER_SECOND / tweetsPerSecond));
+        this.evictionIntervalMillis = evictionIntervalMillis;
+        this.stripes = new ArrayList<>(stripes);
+        for (int i = 0; i < stripes; i++) {
+            this.stripes.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    void setNanoClock(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(this::evictFullBuckets, evictionIntervalMillis, evictionIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+    }
+
+    /**
+     * Take the tokens for tweets of a publisher
+     *
+     * @param publisher Tweet creator
+     * @param tweets    number of tweets to publish
+     * @throws IllegalArgumentException   When more than burst tweets are published at once
+     * @throws RateLimitExceededException When the publisher has not got that many tokens left
+     */
+    public void acquire(String publisher, int tweets) throws IllegalArgumentException, RateLimitExceededException {
+        if (!enabled) {
+            return;
+        }
+        checkBurst(tweets);
+        take(publisher, tweets);
+    }
+
+    /**
+     * Take the tokens for the tweets of several publishers, all or none: when one of them has not got enough tokens
+     * left, the ones already taken for the others are given back
+     *
+     * @param tweetsByPublisher number of tweets to publish per tweet creator
+     * @throws IllegalArgumentException   When more than burst tweets of a publisher are published at once
+     * @throws RateLimitExceededException When a publisher has not got that many tokens left
+     */
+    public void acquire(Map<String, Integer> tweetsByPublisher) throws IllegalArgumentException, RateLimitExceededException {
+        if (!enabled) {
+            return;
+        }
+        tweetsByPublisher.values().forEach(this::checkBurst);
+        Map<String, Integer> taken = new LinkedHashMap<>();
+        try {
+            tweetsByPublisher.forEach((publisher, tweets) -> {
+                take(publisher, tweets);
+                taken.put(publisher, tweets);
+            });
+        } catch (RateLimitExceededException ex) {
+            taken.forEach(this::giveBack);
+            rateLimitedTweets.add(taken.values().stream().mapToInt(Integer::intValue).sum());
+            throw ex;
+        }
+    }
+
+    private void checkBurst(int tweets) throws IllegalArgumentException {
+        if (tweets > burst) {
+            throw new IllegalArgumentException("Publisher must not publish more than " + burst + " tweets at once");
+        }
+    }
+
+    private void take(String publisher, int tweets) throws RateLimitExceededException {
+        ConcurrentMap<String, AtomicLong> stripe = stripeOf(publisher);
+        long cost = emissionIntervalNanos * tweets;
+        long capacity = emissionIntervalNanos * burst;
+        while (true) {
+            AtomicLong bucket = stripe.get(publisher);
+            if (bucket == null) {
+                bucket = stripe.computeIfAbsent(publisher, key -> new AtomicLong(nanoClock.getAsLong()));
+            }
+            long fullAt = bucket.get();
+            if (fullAt == EVICTED) {
+                stripe.remove(publisher, bucket);
+                continue;
+            }
+            long now = nanoClock.getAsLong();
+            long nextFullAt = (fullAt - now > 0 ? fullAt : now) + cost;
+            if (nextFullAt - now > capacity) {
+                rateLimitedTweets.add(tweets);
+                throw new RateLimitExceededException(publisher, toRetryAfterSeconds(nextFullAt - now - capacity));
+            }
+            if (bucket.compareAndSet(fullAt, nextFullAt)) {
+                return;
+            }
+        }
+    }
+
+    private void giveBack(String publisher, int tweets) {
+        AtomicLong bucket = stripeOf(publisher).get(publisher);
+        if (bucket == null) {
+            return;
+        }
+        while (true) {
+            long fullAt = bucket.get();
+            // an evicted bucket is full already
+            if (fullAt == EVICTED || bucket.compareAndSet(fullAt, fullAt - emissionIntervalNanos * tweets)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        if (!enabled) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new Metric<Number>("rate-limit.publishers", size()));
+    }
+
+    /**
+     * Remove the buckets that are full again
+     */
+    void evictFullBuckets() {
+        for (ConcurrentMap<String, AtomicLong> stripe : stripes) {
+            long now = nanoClock.getAsLong();
+            for (Map.Entry<String, AtomicLong> entry : stripe.entrySet()) {
+                AtomicLong bucket = entry.getValue();
+                long fullAt = bucket.get();
+                if (fullAt != EVICTED && fullAt - now <= 0 && bucket.compareAndSet(fullAt, EVICTED)) {
+                    stripe.remove(entry.getKey(), bucket);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of publishers holding a bucket
+     */
+    int size() {
+        int size = 0;
+        for (ConcurrentMap<String, AtomicLong> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private ConcurrentMap<String, AtomicLong> stripeOf(String publisher) {
+        int hash = publisher.hashCode();
+        return stripes.get(Math.floorMod(hash ^ (hash >>> 16), stripes.size()));
+    }
+
+    private static long toRetryAfterSeconds(long nanos) {
+        return Math.max(1, (nanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+    }
+}
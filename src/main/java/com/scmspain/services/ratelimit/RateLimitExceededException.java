@@ -0,0 +1,23 @@
+package com.scmspain.services.ratelimit;
+
+/**
+ * A publisher published faster than its rate limit allows
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public RateLimitExceededException(String publisher, long retryAfterSeconds) {
+        super("Publisher " + publisher + " is publishing too fast, retry in " + retryAfterSeconds + " seconds");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return whole seconds until the publisher has enough tokens again
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,114 @@
+package com.scmspain.services.search;
+
+import java.util.Arrays;
+
+/**
+ * Ascending, duplicate free tweet ids of one term, kept in a primitive array.
+ * <p>
+ * Not thread safe: the index guards every access.
+ */
+final class PostingList {
+
+    private long[] ids = new long[2];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    long get(int index) {
+        return ids[index];
+    }
+
+    boolean contains(long id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    /**
+     * @param id tweet id
+     * @return position of the highest id lower than the given one, -1 when there is none
+     */
+    int lastBelow(long id) {
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        return (position >= 0 ? position : -position - 1) - 1;
+    }
+
+    /**
+     * Add an id. Ids grow with every insert, so appending is the common case.
+     *
+     * @param id tweet id
+     */
+    void add(long id) {
+        if (size > 0 && ids[size - 1] >= id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                insert(-position - 1, id);
+            }
+            return;
+        }
+        grow(size + 1);
+        ids[size++] = id;
+    }
+
+    /**
+     * Merge every id of another list
+     *
+     * @param other list to merge, left unchanged
+     */
+    void addAll(PostingList other) {
+        if (other.size == 0) {
+            return;
+        }
+        if (size == 0 || ids[size - 1] < other.ids[0]) {
+            grow(size + other.size);
+            System.arraycopy(other.ids, 0, ids, size, other.size);
+            size += other.size;
+            return;
+        }
+        long[] merged = new long[size + other.size];
+        int mine = 0;
+        int theirs = 0;
+        int count = 0;
+        while (mine < size || theirs < other.size) {
+            long next;
+            if (theirs == other.size || (mine < size && ids[mine] <= other.ids[theirs])) {
+                next = ids[mine++];
+            } else {
+                next = other.ids[theirs++];
+            }
+            if (count == 0 || merged[count - 1] != next) {
+                merged[count++] = next;
+            }
+        }
+        ids = merged;
+        size = count;
+    }
+
+    /**
+     * Drop every id of another list
+     *
+     * @param removed ids to drop
+     */
+    void removeAll(PostingList removed) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (!removed.contains(ids[i])) {
+                ids[count++] = ids[i];
+            }
+        }
+        size = count;
+    }
+
+    private void insert(int position, long id) {
+        grow(size + 1);
+        System.arraycopy(ids, position, ids, position + 1, size - position);
+        ids[position] = id;
+        size++;
+    }
+
+    private void grow(int capacity) {
+        if (capacity > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(capacity, ids.length + (ids.length >> 1)));
+        }
+    }
+}
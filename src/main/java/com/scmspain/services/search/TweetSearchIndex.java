@@ -0,0 +1,290 @@
+package com.scmspain.services.search;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.events.TweetDiscardedEvent;
+import com.scmspain.events.TweetPublishedEvent;
+import com.scmspain.repositories.TweetRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index of published tweets, enabled with tweets.search.enabled: every word and every publisher
+ * maps to the ascending ids of the tweets holding it. Ids grow with every insert, so walking a posting list backwards returns the newest
+ * tweets first.
+ * <p>
+ * Built from the tweet table on startup, then kept up to date from committed publish and discard events.
+ * Discarded ids are filtered out at query time and purged from the posting lists every compaction-threshold
+ * discards. Only enable it on single-instance deployments: writes made by other instances are not seen.
+ * <p>
+ * With rebuild-in-background the rebuild runs after startup instead of delaying it, and searches are rejected
+ * until it completes.
+ */
+@Component
+public class TweetSearchIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TweetSearchIndex.class);
+
+    private TweetRepository tweetRepository;
+    private TransactionTemplate transactionTemplate;
+    private boolean enabled;
+    private int rebuildThreads;
+    private int rebuildChunkSize;
+    private int compactionThreshold;
+    private boolean rebuildInBackground;
+    private volatile boolean ready;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, PostingList> words = new HashMap<>();
+    private final Map<String, PostingList> publishers = new HashMap<>();
+    private PostingList removed = new PostingList();
+
+    @Autowired
+    public TweetSearchIndex(TweetRepository tweetRepository, PlatformTransactionManager transactionManager,
+                            @Value("${tweets.search.enabled:false}") boolean enabled,
+                            @Value("${tweets.search.rebuild-threads:4}") int rebuildThreads,
+                            @Value("${tweets.search.rebuild-chunk-size:10000}") int rebuildChunkSize,
+                            @Value("${tweets.search.compaction-threshold:10000}") int compactionThreshold,
+                            @Value("${tweets.search.rebuild-in-background:false}") boolean rebuildInBackground) {
+        if (rebuildThreads < 1 || rebuildChunkSize < 1 || compactionThreshold < 1) {
+            throw new IllegalArgumentException("Search index threads, chunk size and compaction threshold must be positive");
+        }
+        this.tweetRepository = tweetRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.enabled = enabled;
+        this.rebuildThreads = rebuildThreads;
+        this.rebuildChunkSize = rebuildChunkSize;
+        this.compactionThreshold = compactionThreshold;
+        this.rebuildInBackground = rebuildInBackground;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Split a text into the words the index knows: lower case runs of letters and digits
+     *
+     * @param text tweet content or search query
+     * @return distinct words, in order of appearance
+     */
+    public static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        StringBuilder word = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            int codePoint = text.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                word.appendCodePoint(Character.toLowerCase(codePoint));
+            } else if (word.length() > 0) {
+                terms.add(word.toString());
+                word.setLength(0);
+            }
+            i += Character.charCount(codePoint);
+        }
+        if (word.length() > 0) {
+            terms.add(word.toString());
+        }
+        return terms;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (!rebuildInBackground) {
+            rebuild();
+            return;
+        }
+        Thread loader = new Thread(() -> {
+            try {
+                rebuild();
+            } catch (RuntimeException ex) {
+                LOGGER.error("Could not rebuild the search index, searches stay rejected", ex);
+            }
+        }, "search-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Index every published tweet of the tweet table, reading id ranges of rebuild-chunk-size in parallel
+     */
+    public void rebuild() {
+        Long first = transactionTemplate.execute(status -> tweetRepository.findMinId());
+        Long last = transactionTemplate.execute(status -> tweetRepository.findMaxId());
+        if (first == null || last == null) {
+            ready = true;
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(rebuildThreads, runnable -> {
+            Thread thread = new Thread(runnable, "search-index-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> chunks = new ArrayList<>();
+            for (long from = first; from <= last; from += rebuildChunkSize) {
+                long chunkStart = from;
+                chunks.add(executor.submit(() -> indexChunk(chunkStart, chunkStart + rebuildChunkSize)));
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rebuilding the search index", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Could not rebuild the search index", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        ready = true;
+        LOGGER.info("Search index rebuilt with {} words and {} publishers", words.size(), publishers.size());
+    }
+
+    /**
+     * @param terms     words the tweets must all contain, as split by {@link #terms(String)}
+     * @param publisher publisher the tweets must come from, null for any
+     * @param beforeId  only return ids lower than this one, null to start from the newest tweet
+     * @param limit     maximum number of ids to return
+     * @return ids of the matching tweets, newest first
+     * @throws RejectedExecutionException When the index is still being rebuilt
+     */
+    public long[] search(Collection<String> terms, String publisher, Long beforeId, int limit) throws RejectedExecutionException {
+        if (!ready) {
+            throw new RejectedExecutionException("The search index is still being rebuilt");
+        }
+        lock.readLock().lock();
+        try {
+            List<PostingList> lists = new ArrayList<>(terms.size() + 1);
+            for (String term : terms) {
+                lists.add(words.get(term));
+            }
+            if (publisher != null) {
+                lists.add(publishers.get(publisher));
+            }
+            if (lists.isEmpty() || lists.contains(null)) {
+                return new long[0];
+            }
+            lists.sort(Comparator.comparingInt(PostingList::size));
+            PostingList shortest = lists.get(0);
+            long[] ids = new long[Math.min(limit, shortest.size())];
+            int count = 0;
+            int i = beforeId == null ? shortest.size() - 1 : shortest.lastBelow(beforeId);
+            for (; i >= 0 && count < ids.length; i--) {
+                long id = shortest.get(i);
+                if (!removed.contains(id) && containedInAll(lists, id)) {
+                    ids[count++] = id;
+                }
+            }
+            return Arrays.copyOf(ids, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPublished(TweetPublishedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            index(words, publishers, event.getTweet());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDiscarded(TweetDiscardedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removed.add(event.getId());
+            // a chunk read before the discard may still be merged while rebuilding, so keep the tombstone until then
+            if (ready && removed.size() >= compactionThreshold) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void indexChunk(long from, long to) {
+        List<Tweet> tweets = transactionTemplate.execute(status -> tweetRepository.findPublishedInIdRange(from, to));
+        Map<String, PostingList> chunkWords = new HashMap<>();
+        Map<String, PostingList> chunkPublishers = new HashMap<>();
+        for (Tweet tweet : tweets) {
+            index(chunkWords, chunkPublishers, tweet);
+        }
+        lock.writeLock().lock();
+        try {
+            merge(words, chunkWords);
+            merge(publishers, chunkPublishers);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compact() {
+        purge(words);
+        purge(publishers);
+        removed = new PostingList();
+    }
+
+    private void purge(Map<String, PostingList> index) {
+        index.values().removeIf(postings -> {
+            postings.removeAll(removed);
+            return postings.size() == 0;
+        });
+    }
+
+    private static void index(Map<String, PostingList> words, Map<String, PostingList> publishers, Tweet tweet) {
+        for (String term : terms(tweet.getTweet())) {
+            words.computeIfAbsent(term, key -> new PostingList()).add(tweet.getId());
+        }
+        publishers.computeIfAbsent(tweet.getPublisher(), key -> new PostingList()).add(tweet.getId());
+    }
+
+    private static void merge(Map<String, PostingList> index, Map<String, PostingList> chunk) {
+        chunk.forEach((key, postings) -> index.computeIfAbsent(key, k -> new PostingList()).addAll(postings));
+    }
+
+    private static boolean containedInAll(List<PostingList> lists, long id) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
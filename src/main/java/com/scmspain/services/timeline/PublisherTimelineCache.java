@@ -0,0 +1,126 @@
+package com.scmspain.services.timeline;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.events.TweetDiscardedEvent;
+import com.scmspain.events.TweetPublishedEvent;
+import com.scmspain.repositories.TweetRepository;
+import com.scmspain.services.TweetCursor;
+import com.scmspain.services.archive.TweetArchive;
+import com.scmspain.services.metrics.Counter;
+import com.scmspain.services.metrics.CounterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Latest max-size published tweets of the max-publishers most recently read publishers, kept up to date from
+ * committed publish and discard events. Only enable it on single-instance deployments: writes made by other
+ * instances are not seen.
+ */
+@Component
+public class PublisherTimelineCache {
+
+    private Counter hits;
+    private Counter misses;
+    private TweetRepository tweetRepository;
+    private TweetArchive archive;
+    private boolean enabled;
+    private int maxSize;
+    private Map<String, Timeline> timelines;
+
+    @Autowired
+    public PublisherTimelineCache(CounterRegistry counterRegistry, TweetRepository tweetRepository, TweetArchive archive,
+                                  @Value("${tweets.publisher-cache.enabled:false}") boolean enabled,
+                                  @Value("${tweets.publisher-cache.max-size:20}") int maxSize,
+                                  @Value("${tweets.publisher-cache.max-publishers:1000}") int maxPublishers) {
+        if (maxSize < 1 || maxPublishers < 1) {
+            throw new IllegalArgumentException("Publisher cache sizes must be positive");
+        }
+        this.hits = counterRegistry.counter("publisher-cache-hits");
+        this.misses = counterRegistry.counter("publisher-cache-misses");
+        this.tweetRepository = tweetRepository;
+        this.archive = archive;
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.timelines = Collections.synchronizedMap(new RecentTimelines(maxPublishers));
+    }
+
+    /**
+     * @param publisher publisher of the tweets
+     * @param after     cursor of the last tweet of the previous page, null for the first page
+     * @param limit     maximum number of tweets to return
+     * @return the requested page of published tweets of the publisher, when the cache covers it
+     */
+    public Optional<List<Tweet>> publishedPage(String publisher, TweetCursor after, int limit) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Timeline timeline = timelines.computeIfAbsent(publisher, key -> new Timeline(Tweet::getPublicationDate, maxSize));
+        if (!timeline.isLoaded()) {
+            long generation = timeline.generation();
+            timeline.load(generation, load(publisher, new PageRequest(0, maxSize + 1)));
+        }
+        Optional<List<Tweet>> result = timeline.page(after, limit);
+        (result.isPresent() ? hits : misses).increment();
+        return result;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPublished(TweetPublishedEvent event) {
+        Timeline timeline = timelines.get(event.getTweet().getPublisher());
+        if (timeline != null) {
+            timeline.add(TweetTimelineCache.copyOf(event.getTweet()));
+        }
+    }
+
+    /**
+     * Drop the tweet from the timeline holding it. The event only carries the id, so every cached timeline is
+     * looked up; timelines still loading are told to drop their read.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDiscarded(TweetDiscardedEvent event) {
+        List<Timeline> cached;
+        synchronized (timelines) {
+            cached = new ArrayList<>(timelines.values());
+        }
+        for (Timeline timeline : cached) {
+            if (!timeline.isLoaded() || timeline.find(event.getId()).isPresent()) {
+                timeline.remove(event.getId());
+            }
+        }
+    }
+
+    private List<Tweet> load(String publisher, PageRequest page) {
+        List<Tweet> tweets = tweetRepository.findPublishedByPublisher(publisher, page);
+        return archive.isEnabled() ? archive.continuePublishedBy(publisher, tweets, null, page.getPageSize()) : tweets;
+    }
+
+    /**
+     * Timelines in access order, dropping the least recently read one past max-publishers
+     */
+    private static class RecentTimelines extends LinkedHashMap<String, Timeline> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxPublishers;
+
+        RecentTimelines(int maxPublishers) {
+            super(16, 0.75f, true);
+            this.maxPublishers = maxPublishers;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Timeline> eldest) {
+            return size() > maxPublishers;
+        }
+    }
+}
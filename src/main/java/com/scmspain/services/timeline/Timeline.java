@@ -0,0 +1,178 @@
+package com.scmspain.services.timeline;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.services.TweetCursor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Newest-first window of a tweet listing.
+ * <p>
+ * Writers are serialized and publish an immutable snapshot on every change, so readers never block.
+ */
+class Timeline {
+
+    private final Function<Tweet, Date> sortDate;
+    private final int maxSize;
+
+    private volatile Snapshot snapshot = Snapshot.UNLOADED;
+    private long generation;
+
+    Timeline(Function<Tweet, Date> sortDate, int maxSize) {
+        this.sortDate = sortDate;
+        this.maxSize = maxSize;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    boolean isLoaded() {
+        return snapshot.loaded;
+    }
+
+    /**
+     * @return every tweet of the listing, when the window holds all of them
+     */
+    Optional<List<Tweet>> all() {
+        Snapshot current = snapshot;
+        return current.complete ? Optional.of(current.tweets) : Optional.empty();
+    }
+
+    /**
+     * @param after cursor of the last tweet of the previous page, null for the first page
+     * @param limit maximum number of tweets to return
+     * @return the requested page, when the window covers it
+     */
+    Optional<List<Tweet>> page(TweetCursor after, int limit) {
+        Snapshot current = snapshot;
+        if (!current.loaded) {
+            return Optional.empty();
+        }
+        int from = after == null ? 0 : firstAfter(current.tweets, after);
+        int to = from + limit;
+        if (to <= current.tweets.size()) {
+            return Optional.of(current.tweets.subList(from, to));
+        }
+        if (current.complete) {
+            return Optional.of(current.tweets.subList(from, current.tweets.size()));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @param id tweet id
+     * @return the tweet with that id, when the window holds it
+     */
+    Optional<Tweet> find(Long id) {
+        for (Tweet tweet : snapshot.tweets) {
+            if (tweet.getId().equals(id)) {
+                return Optional.of(tweet);
+            }
+        }
+        return Optional.empty();
+    }
+
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Install a window read from the repository, unless the timeline changed since the read started
+     *
+     * @param expectedGeneration generation observed before reading the window
+     * @param newestFirst        up to maxSize + 1 tweets in listing order
+     * @return true when the window was installed
+     */
+    synchronized boolean load(long expectedGeneration, List<Tweet> newestFirst) {
+        if (generation != expectedGeneration) {
+            return false;
+        }
+        boolean complete = newestFirst.size() <= maxSize;
+        List<Tweet> window = new ArrayList<>(newestFirst.subList(0, Math.min(maxSize, newestFirst.size())));
+        snapshot = new Snapshot(window, true, complete);
+        generation++;
+        return true;
+    }
+
+    synchronized void add(Tweet tweet) {
+        generation++;
+        Snapshot current = snapshot;
+        if (!current.loaded) {
+            return;
+        }
+        List<Tweet> tweets = withoutId(current.tweets, tweet.getId());
+        int position = firstAfter(tweets, TweetCursor.of(sortDate.apply(tweet), tweet.getId()));
+        if (position == tweets.size() && !current.complete) {
+            return;
+        }
+        tweets.add(position, tweet);
+        boolean complete = current.complete;
+        if (tweets.size() > maxSize) {
+            tweets.remove(tweets.size() - 1);
+            complete = false;
+        }
+        snapshot = new Snapshot(tweets, true, complete);
+    }
+
+    synchronized void remove(Long id) {
+        generation++;
+        Snapshot current = snapshot;
+        if (current.loaded) {
+            snapshot = new Snapshot(withoutId(current.tweets, id), true, current.complete);
+        }
+    }
+
+    synchronized void invalidate() {
+        generation++;
+        snapshot = Snapshot.UNLOADED;
+    }
+
+    private int firstAfter(List<Tweet> tweets, TweetCursor cursor) {
+        int low = 0;
+        int high = tweets.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (isAfter(tweets.get(middle), cursor)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private boolean isAfter(Tweet tweet, TweetCursor cursor) {
+        int byDate = Long.compare(sortDate.apply(tweet).getTime(), cursor.getDate().getTime());
+        return byDate < 0 || (byDate == 0 && tweet.getId() < cursor.getId());
+    }
+
+    private static List<Tweet> withoutId(List<Tweet> tweets, Long id) {
+        List<Tweet> copy = new ArrayList<>(tweets.size() + 1);
+        for (Tweet tweet : tweets) {
+            if (!tweet.getId().equals(id)) {
+                copy.add(tweet);
+            }
+        }
+        return copy;
+    }
+
+    private static final class Snapshot {
+        private static final Snapshot UNLOADED = new Snapshot(Collections.emptyList(), false, false);
+
+        private final List<Tweet> tweets;
+        private final boolean loaded;
+        private final boolean complete;
+
+        private Snapshot(List<Tweet> tweets, boolean loaded, boolean complete) {
+            this.tweets = Collections.unmodifiableList(tweets);
+            this.loaded = loaded;
+            this.complete = complete;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.scmspain.services.timeline;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.events.TweetDiscardedEvent;
+import com.scmspain.events.TweetPublishedEvent;
+import com.scmspain.repositories.TweetRepository;
+import com.scmspain.services.TweetCursor;
+import com.scmspain.services.archive.TweetArchive;
+import com.scmspain.services.metrics.Counter;
+import com.scmspain.services.metrics.CounterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Bounded in-memory copy of the newest published and discarded tweets, kept up to date from committed
+ * publish and discard events. Only enable it on single-instance deployments: writes made by other
+ * instances are not seen.
+ */
+@Component
+public class TweetTimelineCache {
+
+    private Counter hits;
+    private Counter misses;
+    private TweetRepository tweetRepository;
+    private TweetArchive archive;
+    private boolean enabled;
+    private Timeline published;
+    private Timeline discarded;
+
+    @Autowired
+    public TweetTimelineCache(CounterRegistry counterRegistry, TweetRepository tweetRepository, TweetArchive archive,
+                              @Value("${tweets.timeline-cache.enabled:false}") boolean enabled,
+                              @Value("${tweets.timeline-cache.max-size:1000}") int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Timeline cache size must be positive");
+        }
+        this.hits = counterRegistry.counter("timeline-cache-hits");
+        this.misses = counterRegistry.counter("timeline-cache-misses");
+        this.tweetRepository = tweetRepository;
+        this.archive = archive;
+        this.enabled = enabled;
+        this.published = new Timeline(Tweet::getPublicationDate, maxSize);
+        this.discarded = new Timeline(Tweet::getDiscardedDate, maxSize);
+    }
+
+    /**
+     * @return every published tweet, newest first, when all of them fit in the cache
+     */
+    public Optional<List<Tweet>> allPublished() {
+        return read(published, Timeline::all, this::loadPublished);
+    }
+
+    /**
+     * @return every discarded tweet, last discarded first, when all of them fit in the cache
+     */
+    public Optional<List<Tweet>> allDiscarded() {
+        return read(discarded, Timeline::all, this::loadDiscarded);
+    }
+
+    /**
+     * @param after cursor of the last tweet of the previous page, null for the first page
+     * @param limit maximum number of tweets to return
+     * @return the requested page of published tweets, when the cache covers it
+     */
+    public Optional<List<Tweet>> publishedPage(TweetCursor after, int limit) {
+        return read(published, timeline -> timeline.page(after, limit),
+                this::loadPublished);
+    }
+
+    /**
+     * @param after cursor of the last tweet of the previous page, null for the first page
+     * @param limit maximum number of tweets to return
+     * @return the requested page of discarded tweets, when the cache covers it
+     */
+    public Optional<List<Tweet>> discardedPage(TweetCursor after, int limit) {
+        return read(discarded, timeline -> timeline.page(after, limit),
+                this::loadDiscarded);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPublished(TweetPublishedEvent event) {
+        published.add(copyOf(event.getTweet()));
+    }
+
+    /**
+     * Move the tweet to the discarded timeline when the published window holds it. Otherwise its content is
+     * unknown, and the discarded timeline is reloaded on its next read.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDiscarded(TweetDiscardedEvent event) {
+        Optional<Tweet> tweet = published.find(event.getId());
+        published.remove(event.getId());
+        if (tweet.isPresent()) {
+            Tweet copy = copyOf(tweet.get());
+            copy.setDiscarded(true);
+            copy.setDiscardedDate(event.getDiscardedDate());
+            discarded.add(copy);
+        } else {
+            discarded.invalidate();
+        }
+    }
+
+    private Optional<List<Tweet>> read(Timeline timeline, Function<Timeline, Optional<List<Tweet>>> query,
+                                       Function<PageRequest, List<Tweet>> loader) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        if (!timeline.isLoaded()) {
+            long generation = timeline.generation();
+            timeline.load(generation, loader.apply(new PageRequest(0, timeline.getMaxSize() + 1)));
+        }
+        Optional<List<Tweet>> result = query.apply(timeline);
+        (result.isPresent() ? hits : misses).increment();
+        return result;
+    }
+
+    private List<Tweet> loadPublished(PageRequest page) {
+        List<Tweet> tweets = tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(page);
+        return archive.isEnabled() ? archive.continuePublished(tweets, null, page.getPageSize()) : tweets;
+    }
+
+    private List<Tweet> loadDiscarded(PageRequest page) {
+        List<Tweet> tweets = tweetRepository.findAllByDiscardedTrueOrderByDiscardedDateDescIdDesc(page);
+        return archive.isEnabled() ? archive.continueDiscarded(tweets, null, page.getPageSize()) : tweets;
+    }
+
+    static Tweet copyOf(Tweet tweet) {
+        Tweet copy = new Tweet(tweet.getPublisher(), tweet.getTweet(), tweet.getDiscarded(), tweet.getPublicationDate());
+        copy.setId(tweet.getId());
+        copy.setDiscardedDate(tweet.getDiscardedDate());
+        copy.setPre2015MigrationStatus(tweet.getPre2015MigrationStatus());
+        return copy;
+    }
+}
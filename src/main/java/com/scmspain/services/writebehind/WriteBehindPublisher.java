@@ -0,0 +1,268 @@
+package com.scmspain.services.writebehind;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scmspain.entities.Tweet;
+import com.scmspain.events.TweetPublishedEvent;
+import com.scmspain.repositories.TweetRepository;
+import com.scmspain.services.metrics.Counter;
+import com.scmspain.services.metrics.CounterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bounded queue of validated tweets drained by a single writer thread, which saves them in grouped
+ * transactions of up to flush-size tweets or whatever arrived within flush-interval-ms.
+ * <p>
+ * Queued tweets have already been answered as published, so they are never dropped: a group that fails to save is
+ * retried max-retries times with a doubling backoff, and then appended as JSON lines to dead-letter-file, to be
+ * published again, and counted as write-behind-failed-tweets. Tweets still queued when the writer is interrupted
+ * go to the same file, as do the ones left when stop gives up waiting for the writer after shutdown-timeout-ms.
+ */
+@Component
+public class WriteBehindPublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindPublisher.class);
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 10000;
+
+    private Counter failedTweets;
+    private TweetRepository tweetRepository;
+    private TransactionTemplate transactionTemplate;
+    private ApplicationEventPublisher eventPublisher;
+    private boolean enabled;
+    private int flushSize;
+    private long flushIntervalNanos;
+    private long shutdownTimeoutMillis;
+    private int maxRetries;
+    private long retryBackoffMillis;
+    private File deadLetterFile;
+    private ObjectMapper objectMapper = new ObjectMapper();
+    private BlockingQueue<Tweet> queue;
+    // enqueue checks running and offers under the read lock, so no tweet is queued after stop clears it
+    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private volatile boolean running;
+    private Thread writer;
+
+    @Autowired
+    public WriteBehindPublisher(CounterRegistry counterRegistry, TweetRepository tweetRepository,
+                                PlatformTransactionManager transactionManager, ApplicationEventPublisher eventPublisher,
+                                @Value("${tweets.write-behind.enabled:false}") boolean enabled,
+                                @Value("${tweets.write-behind.queue-capacity:10000}") int queueCapacity,
+                                @Value("${tweets.write-behind.flush-size:500}") int flushSize,
+                                @Value("${tweets.write-behind.flush-interval-ms:50}") long flushIntervalMillis,
+                                @Value("${tweets.write-behind.shutdown-timeout-ms:30000}") long shutdownTimeoutMillis,
+                                @Value("${tweets.write-behind.max-retries:5}") int maxRetries,
+                                @Value("${tweets.write-behind.retry-backoff-ms:100}") long retryBackoffMillis,
+                                @Value("${tweets.write-behind.dead-letter-file:data/write-behind-dead-letter.jsonl}") String deadLetterFile) {
+        if (flushSize < 1 || flushIntervalMillis < 1 || maxRetries < 0 || retryBackoffMillis < 1) {
+            throw new IllegalArgumentException("Write-behind flush size, interval and retry backoff must be positive, retries must not be negative");
+        }
+        this.failedTweets = counterRegistry.counter("write-behind-failed-tweets");
+        this.tweetRepository = tweetRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.flushSize = flushSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.deadLetterFile = new File(deadLetterFile);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue a validated tweet to be saved by the writer
+     *
+     * @param tweet tweet to save
+     * @throws RejectedExecutionException When the queue is full or shutting down
+     */
+    public void enqueue(Tweet tweet) throws RejectedExecutionException {
+        stateLock.readLock().lock();
+        try {
+            if (!running || !queue.offer(tweet)) {
+                throw new RejectedExecutionException("Publish queue is full, try again later");
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::drain, "tweet-write-behind");
+        writer.start();
+    }
+
+    /**
+     * Stop accepting tweets and wait for the writer to save the ones already queued. A writer still busy after the
+     * shutdown timeout is interrupted, and the tweets it did not take yet are written to the dead letter file.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        stateLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        writer.join(shutdownTimeoutMillis);
+        if (writer.isAlive()) {
+            LOGGER.error("Write-behind writer did not finish within {} ms, interrupting it", shutdownTimeoutMillis);
+            writer.interrupt();
+            writer.join(shutdownTimeoutMillis);
+        }
+        List<Tweet> unsaved = new ArrayList<>();
+        queue.drainTo(unsaved);
+        if (!unsaved.isEmpty()) {
+            LOGGER.error("Write-behind shutdown timed out with {} tweets still queued", unsaved.size());
+            deadLetter(unsaved);
+        }
+        if (writer.isAlive()) {
+            LOGGER.error("Write-behind writer is still saving a batch after being interrupted");
+        }
+    }
+
+    private void drain() {
+        try {
+            while (running || !queue.isEmpty()) {
+                List<Tweet> batch = nextBatch();
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            List<Tweet> unsaved = new ArrayList<>();
+            queue.drainTo(unsaved);
+            if (!unsaved.isEmpty()) {
+                deadLetter(unsaved);
+            }
+        }
+    }
+
+    private List<Tweet> nextBatch() throws InterruptedException {
+        List<Tweet> batch = new ArrayList<>(flushSize);
+        Tweet first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return batch;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < flushSize) {
+            queue.drainTo(batch, flushSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() == flushSize || remaining <= 0 || !running) {
+                break;
+            }
+            Tweet next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void flush(List<Tweet> batch) throws InterruptedException {
+        long backoffMillis = retryBackoffMillis;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                save(batch);
+                return;
+            } catch (RuntimeException ex) {
+                if (attempt == maxRetries) {
+                    LOGGER.error("Could not save {} queued tweets after {} retries", batch.size(), maxRetries, ex);
+                    deadLetter(batch);
+                    return;
+                }
+                LOGGER.warn("Could not save {} queued tweets, retrying in {} ms", batch.size(), backoffMillis, ex);
+            }
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException ex) {
+                deadLetter(batch);
+                throw ex;
+            }
+            backoffMillis = Math.min(backoffMillis * 2, MAX_RETRY_BACKOFF_MILLIS);
+        }
+    }
+
+    private void save(List<Tweet> batch) {
+        // ids handed out by a rolled back attempt were never stored
+        batch.forEach(tweet -> tweet.setId(null));
+        transactionTemplate.execute(status -> {
+            tweetRepository.save(batch);
+            batch.forEach(tweet -> eventPublisher.publishEvent(new TweetPublishedEvent(tweet)));
+            return null;
+        });
+    }
+
+    // called by the writer and by stop once it gives up on the writer, which may still be running
+    private synchronized void deadLetter(List<Tweet> tweets) {
+        failedTweets.add(tweets.size());
+        List<String> lines = new ArrayList<>(tweets.size());
+        for (Tweet tweet : tweets) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("publisher", tweet.getPublisher());
+            line.put("tweet", tweet.getTweet());
+            line.put("publicationDate", tweet.getPublicationDate() == null ? null : tweet.getPublicationDate().getTime());
+            try {
+                lines.add(objectMapper.writeValueAsString(line));
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        try {
+            File directory = deadLetterFile.getAbsoluteFile().getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create directory " + directory);
+            }
+            try (Writer writer = Files.newBufferedWriter(deadLetterFile.toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+            LOGGER.error("Wrote {} unsaved tweets to {}, they must be published again", tweets.size(), deadLetterFile);
+        } catch (IOException ex) {
+            LOGGER.error("Could not write {} unsaved tweets to {}, they must be published again from this log: {}", tweets.size(), deadLetterFile, lines, ex);
+        }
+    }
+}
@@ -8,9 +8,25 @@ import java.util.Optional;
 @Component
 public class TweetValidator {
 
-    private static final String HTTP_REGEX = "(https?)://[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|]";
     private static final int TWEET_MAX_LENGTH = 140;
 
+    private static final String HTTP_SCHEME = "http";
+    private static final String SCHEME_SEPARATOR = "://";
+    private static final String SECURE_SCHEME_SEPARATOR = "s" + SCHEME_SEPARATOR;
+    private static final String LINK_END_SYMBOLS = "-+&@#/%=~_|";
+    private static final String LINK_INNER_SYMBOLS = "?!:,.;";
+    private static final boolean[] LINK_CHARS = new boolean[128];
+    private static final boolean[] LINK_END_CHARS = new boolean[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            boolean linkEnd = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || LINK_END_SYMBOLS.indexOf(c) >= 0;
+            LINK_END_CHARS[c] = linkEnd;
+            LINK_CHARS[c] = linkEnd || LINK_INNER_SYMBOLS.indexOf(c) >= 0;
+        }
+    }
+
     /**
      * Validate a given tweet
      *
@@ -36,9 +52,60 @@ public class TweetValidator {
     }
 
     private void checkTextLenght(String text) throws IllegalArgumentException {
-        String textWithoutUrl = text.replaceAll(HTTP_REGEX, "");
-        if (textWithoutUrl.length() >= TWEET_MAX_LENGTH) {
+        if (effectiveLength(text, TWEET_MAX_LENGTH) >= TWEET_MAX_LENGTH) {
             throw new IllegalArgumentException("Tweet must not be greater than 140 character");
         }
     }
+
+    /**
+     * Count the characters of a text leaving out its http:// and https:// links, in a single pass
+     *
+     * @param text  text to measure
+     * @param limit length at which counting stops
+     * @return length of the text without links, or limit when it is reached
+     */
+    static int effectiveLength(String text, int limit) {
+        int length = 0;
+        int position = 0;
+        while (position < text.length() && length < limit) {
+            int linkEnd = linkEndAt(text, position);
+            if (linkEnd > 0) {
+                position = linkEnd;
+            } else {
+                length++;
+                position++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * A link is the scheme followed by the longest run of link characters that ends in a link end character
+     *
+     * @return index just after the link starting at the given position, or -1 when there is none
+     */
+    private static int linkEndAt(String text, int start) {
+        if (text.charAt(start) != 'h' || !text.startsWith(HTTP_SCHEME, start)) {
+            return -1;
+        }
+        int schemeEnd = start + HTTP_SCHEME.length();
+        if (text.startsWith(SECURE_SCHEME_SEPARATOR, schemeEnd)) {
+            schemeEnd += SECURE_SCHEME_SEPARATOR.length();
+        } else if (text.startsWith(SCHEME_SEPARATOR, schemeEnd)) {
+            schemeEnd += SCHEME_SEPARATOR.length();
+        } else {
+            return -1;
+        }
+        int linkEnd = -1;
+        for (int position = schemeEnd; position < text.length() && isIn(LINK_CHARS, text.charAt(position)); position++) {
+            if (isIn(LINK_END_CHARS, text.charAt(position))) {
+                linkEnd = position + 1;
+            }
+        }
+        return linkEnd;
+    }
+
+    private static boolean isIn(boolean[] table, char c) {
+        return c < table.length && table[c];
+    }
 }
@@ -0,0 +1,6 @@
+-- Run by Hibernate once it creates the schema. Listing indexes lead with the date the listing is sorted by, in the
+-- same descending order, which @Index column lists lose on the way to the DDL
+CREATE INDEX idx_tweet_published ON tweet (publication_date DESC, id DESC);
+CREATE INDEX idx_tweet_discarded ON tweet (discarded_date DESC, id DESC);
+CREATE INDEX idx_tweet_archive_published ON tweet_archive (publication_date DESC, id DESC);
+CREATE INDEX idx_tweet_archive_discarded ON tweet_archive (discarded_date DESC, id DESC);
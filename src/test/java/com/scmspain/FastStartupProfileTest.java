@@ -0,0 +1,38 @@
+package com.scmspain;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.trace.TraceRepository;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.multipart.MultipartResolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("fast-startup")
+public class FastStartupProfileTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ApplicationContext context;
+
+    @Test
+    public void shouldServeTweetsAndMetricsWithoutTheTrimmedAutoConfigurations() throws Exception {
+        mockMvc.perform(get("/tweet")).andExpect(status().isOk());
+        mockMvc.perform(get("/metrics")).andExpect(status().isOk());
+
+        assertThat(context.getBeanNamesForType(TraceRepository.class)).isEmpty();
+        assertThat(context.getBeanNamesForType(MultipartResolver.class)).isEmpty();
+    }
+}
@@ -0,0 +1,55 @@
+package com.scmspain.configurations.replicas;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.services.TweetService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReplicaRoutingConfigurationTest.PRIMARY_URL,
+        "tweets.replicas.urls=" + ReplicaRoutingConfigurationTest.REPLICA_URL
+})
+@DirtiesContext
+public class ReplicaRoutingConfigurationTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private TweetService tweetService;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+    @Before
+    public void setUp() {
+        replica.execute("CREATE TABLE IF NOT EXISTS tweet (id BIGINT PRIMARY KEY, publisher VARCHAR(255) NOT NULL," +
+                " tweet VARCHAR(255) NOT NULL, discarded BOOLEAN NOT NULL, publication_date TIMESTAMP NOT NULL," +
+                " discarded_date TIMESTAMP, pre2015migration_status BIGINT)");
+        replica.update("DELETE FROM tweet");
+        replica.update("INSERT INTO tweet VALUES (1000, 'replica', 'Read from the replica', FALSE, CURRENT_TIMESTAMP(), NULL, 0)");
+    }
+
+    @Test
+    public void shouldReadFromTheReplicaAndWriteToThePrimary() {
+        tweetService.publishTweet("primary", "Written to the primary");
+
+        assertThat(tweetService.listAllTweets()).extracting(Tweet::getPublisher).containsExactly("replica");
+        assertThat(new JdbcTemplate(dataSource).queryForList("SELECT publisher FROM tweet", String.class))
+                .containsExactly("primary");
+    }
+}
@@ -0,0 +1,82 @@
+package com.scmspain.configurations.replicas;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class ReplicaRoutingDataSourceTest {
+
+    private DataSource primary = mock(DataSource.class);
+    private DataSource firstReplica = mock(DataSource.class);
+    private DataSource secondReplica = mock(DataSource.class);
+    private Connection primaryConnection = mock(Connection.class);
+    private Connection firstReplicaConnection = mock(Connection.class);
+    private Connection secondReplicaConnection = mock(Connection.class);
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(firstReplica.getConnection()).thenReturn(firstReplicaConnection);
+        when(secondReplica.getConnection()).thenReturn(secondReplicaConnection);
+        when(firstReplicaConnection.isValid(anyInt())).thenReturn(true);
+        when(secondReplicaConnection.isValid(anyInt())).thenReturn(true);
+        routingDataSource = new ReplicaRoutingDataSource(primary, Arrays.asList(firstReplica, secondReplica), 1);
+        routingDataSource.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    public void shouldSendWritesToThePrimary() throws SQLException {
+        assertThat(routingDataSource.getConnection()).isSameAs(primaryConnection);
+    }
+
+    @Test
+    public void shouldBalanceReadOnlyTransactionsAcrossReplicas() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(Arrays.asList(routingDataSource.getConnection(), routingDataSource.getConnection()))
+                .containsOnly(firstReplicaConnection, secondReplicaConnection)
+                .doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void shouldSkipUnhealthyReplicasUntilTheyRecover() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        when(firstReplicaConnection.isValid(anyInt())).thenReturn(false);
+        routingDataSource.checkReplicas();
+
+        assertThat(Arrays.asList(routingDataSource.getConnection(), routingDataSource.getConnection()))
+                .containsOnly(secondReplicaConnection);
+
+        when(firstReplicaConnection.isValid(anyInt())).thenReturn(true);
+        routingDataSource.checkReplicas();
+
+        assertThat(Arrays.asList(routingDataSource.getConnection(), routingDataSource.getConnection()))
+                .contains(firstReplicaConnection);
+    }
+
+    @Test
+    public void shouldReadFromThePrimaryWhenNoReplicaIsHealthy() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        when(firstReplica.getConnection()).thenThrow(new SQLException("down"));
+        when(secondReplicaConnection.isValid(anyInt())).thenReturn(false);
+        routingDataSource.checkReplicas();
+
+        assertThat(routingDataSource.getConnection()).isSameAs(primaryConnection);
+    }
+}
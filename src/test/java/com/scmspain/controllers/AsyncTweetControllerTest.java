@@ -0,0 +1,104 @@
+package com.scmspain.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scmspain.controllers.message.ExceptionMessage;
+import com.scmspain.entities.Tweet;
+import com.scmspain.services.TweetService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import javax.servlet.AsyncListener;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+import static org.springframework.http.HttpStatus.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"tweets.async.enabled=true", "tweets.async.timeout-ms=2000",
+        "tweets.async.endpoints.list.timeout-ms=100"})
+@AutoConfigureMockMvc
+public class AsyncTweetControllerTest {
+
+    private static String TWEET_ENDPOINT = "/tweet";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private TweetService tweetService;
+
+    @Test
+    public void shouldPublishATweetOffTheServletThread() throws Exception {
+        MvcResult result = startAsync(post(TWEET_ENDPOINT)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"publisher\": \"Yo\", \"tweet\": \"How are you?\"}"));
+
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().is(CREATED.value()));
+        verify(tweetService).publishTweet("Yo", "How are you?");
+        assertThat(result.getRequest().getAsyncContext().getTimeout()).isEqualTo(2000);
+    }
+
+    @Test
+    public void shouldReturnAPageWithNextCursor() throws Exception {
+        Tweet tweet = new Tweet("Yo", "How are you?", false, new Date());
+        tweet.setId(3L);
+        List<Tweet> page = Collections.singletonList(tweet);
+        when(tweetService.listTweets(null, 1)).thenReturn(page);
+
+        MvcResult result = startAsync(get(TWEET_ENDPOINT).param("limit", "1"));
+
+        MvcResult dispatched = mockMvc.perform(asyncDispatch(result)).andExpect(status().is(OK.value())).andReturn();
+        assertThat(dispatched.getResponse().getHeader(TweetController.NEXT_CURSOR_HEADER)).isNotEmpty();
+        assertThat(result.getRequest().getAsyncContext().getTimeout()).isEqualTo(100);
+    }
+
+    @Test
+    public void shouldReturn400WhenTheServiceRejectsTheRequest() throws Exception {
+        when(tweetService.listTweets(null, 1)).thenThrow(new IllegalArgumentException("Exception Message"));
+
+        MvcResult result = startAsync(get(TWEET_ENDPOINT).param("limit", "1"));
+
+        MvcResult dispatched = mockMvc.perform(asyncDispatch(result)).andExpect(status().is(BAD_REQUEST.value())).andReturn();
+        ExceptionMessage message = new ObjectMapper().readValue(dispatched.getResponse().getContentAsString(), ExceptionMessage.class);
+        assertThat(message.getExceptionClass()).isEqualTo("IllegalArgumentException");
+    }
+
+    @Test
+    public void shouldReturn503WhenTheEndpointTimesOut() throws Exception {
+        when(tweetService.listTweets(null, 1)).thenAnswer(invocation -> {
+            Thread.sleep(500);
+            return Collections.emptyList();
+        });
+
+        MvcResult result = startAsync(get(TWEET_ENDPOINT).param("limit", "1"));
+        for (AsyncListener listener : ((MockAsyncContext) result.getRequest().getAsyncContext()).getListeners()) {
+            listener.onTimeout(null);
+        }
+
+        MvcResult dispatched = mockMvc.perform(asyncDispatch(result)).andExpect(status().is(SERVICE_UNAVAILABLE.value())).andReturn();
+        ExceptionMessage message = new ObjectMapper().readValue(dispatched.getResponse().getContentAsString(), ExceptionMessage.class);
+        assertThat(message.getExceptionClass()).isEqualTo("TimeoutException");
+    }
+
+    private MvcResult startAsync(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        return mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+    }
+}
@@ -0,0 +1,108 @@
+package com.scmspain.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scmspain.controllers.cache.TweetResponseCache;
+import com.scmspain.entities.Tweet;
+import com.scmspain.events.TweetPublishedEvent;
+import com.scmspain.services.TweetService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.http.HttpStatus.NOT_MODIFIED;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "tweets.response-cache.enabled=true")
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class TweetControllerResponseCacheTest {
+
+    private static String TWEET_ENDPOINT = "/tweet";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TweetResponseCache responseCache;
+
+    @MockBean
+    private TweetService tweetService;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldServeTheSerializedListingUntilItChanges() throws Exception {
+        List<Tweet> tweets = Collections.singletonList(new Tweet("publisher", "tweet", false, new Date()));
+        doAnswer(invocation -> {
+            tweets.forEach((Consumer<Tweet>) invocation.getArguments()[0]);
+            return null;
+        }).when(tweetService).streamAllTweets(any());
+
+        MvcResult first = performStreaming(get(TWEET_ENDPOINT));
+        String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+        MvcResult second = performStreaming(get(TWEET_ENDPOINT));
+
+        assertThat(etag).isNotEmpty();
+        assertThat(second.getResponse().getHeader(HttpHeaders.ETAG)).isEqualTo(etag);
+        assertThat(second.getResponse().getContentAsByteArray()).isEqualTo(objectMapper.writeValueAsBytes(tweets));
+        verify(tweetService, times(1)).streamAllTweets(any());
+    }
+
+    @Test
+    public void shouldAnswerNotModifiedWhenTheEtagMatches() throws Exception {
+        MvcResult first = performStreaming(get(TWEET_ENDPOINT));
+        String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+
+        MvcResult notModified = mockMvc.perform(get(TWEET_ENDPOINT).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().is(NOT_MODIFIED.value()))
+                .andReturn();
+
+        assertThat(notModified.getResponse().getContentLength()).isZero();
+        verify(tweetService, times(1)).streamAllTweets(any());
+    }
+
+    @Test
+    public void shouldServeAFreshListingAfterAPublish() throws Exception {
+        MvcResult first = performStreaming(get(TWEET_ENDPOINT));
+        String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+
+        responseCache.onPublished(new TweetPublishedEvent(new Tweet()));
+        MvcResult second = performStreaming(get(TWEET_ENDPOINT).header(HttpHeaders.IF_NONE_MATCH, etag));
+
+        assertThat(second.getResponse().getHeader(HttpHeaders.ETAG)).isNotEqualTo(etag);
+        verify(tweetService, times(2)).streamAllTweets(any());
+    }
+
+    private MvcResult performStreaming(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        MvcResult getResult = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(getResult))
+                .andExpect(status().is(OK.value()));
+        return getResult;
+    }
+}
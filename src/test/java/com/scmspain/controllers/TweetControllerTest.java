@@ -2,11 +2,18 @@ package com.scmspain.controllers;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scmspain.controllers.message.DiscardResultMessage;
 import com.scmspain.controllers.message.ExceptionMessage;
+import com.scmspain.controllers.message.PublishResultMessage;
 import com.scmspain.entities.Tweet;
+import com.scmspain.services.DiscardOutcome;
+import com.scmspain.services.PublishOutcome;
+import com.scmspain.services.TweetCursor;
 import com.scmspain.services.TweetService;
+import com.scmspain.services.ratelimit.RateLimitExceededException;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.stubbing.Answer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -18,19 +25,27 @@ import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
 
 import static java.lang.String.format;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 import static org.springframework.http.HttpStatus.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -44,10 +59,16 @@ public class TweetControllerTest {
 
     private static String TWEET_ENDPOINT = "/tweet";
     private static String DISCARDED_ENDPOINT = "/discarded";
+    private static String TWEET_BATCH_ENDPOINT = "/tweet/batch";
+    private static String DISCARDED_BATCH_ENDPOINT = "/discarded/batch";
+    private static String SEARCH_ENDPOINT = "/search";
 
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @MockBean
     private TweetService tweetService;
 
@@ -74,6 +95,52 @@ public class TweetControllerTest {
 
 
 
+    @Test
+    public void shouldReturn503WhenThePublishQueueIsFull() throws Exception {
+        doThrow(new RejectedExecutionException(EXCEPTION_MESSAGE)).when(tweetService).publishTweet(anyString(), anyString());
+
+        MvcResult getResult = mockMvc.perform(newTweet(PUBLISHER, TWEET))
+                .andExpect(status().is(SERVICE_UNAVAILABLE.value())).andReturn();
+
+        String content = getResult.getResponse().getContentAsString();
+        ExceptionMessage result = new ObjectMapper().readValue(content, ExceptionMessage.class);
+        assertThat(result.getMessage()).isEqualTo(EXCEPTION_MESSAGE);
+        assertThat(result.getExceptionClass()).isEqualTo("RejectedExecutionException");
+    }
+
+    @Test
+    public void shouldReturn429WithRetryAfterWhenThePublisherIsOverItsRateLimit() throws Exception {
+        doThrow(new RateLimitExceededException(PUBLISHER, 3)).when(tweetService).publishTweet(anyString(), anyString());
+
+        MvcResult postResult = mockMvc.perform(newTweet(PUBLISHER, TWEET))
+                .andExpect(status().is(TOO_MANY_REQUESTS.value())).andReturn();
+
+        assertThat(postResult.getResponse().getHeader("Retry-After")).isEqualTo("3");
+        ExceptionMessage result = new ObjectMapper().readValue(postResult.getResponse().getContentAsString(), ExceptionMessage.class);
+        assertThat(result.getExceptionClass()).isEqualTo("RateLimitExceededException");
+    }
+
+    @Test
+    public void shouldReturnAResultPerTweetWhenInsertingABatch() throws Exception {
+        when(tweetService.publishTweets(anyListOf(Tweet.class))).thenReturn(Arrays.asList(
+                PublishOutcome.published(tweetWithId(5L)),
+                PublishOutcome.rejected(new IllegalArgumentException(EXCEPTION_MESSAGE))));
+
+        MvcResult postResult = mockMvc.perform(post(TWEET_BATCH_ENDPOINT)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(format("[{\"publisher\": \"%s\", \"tweet\": \"%s\"}, {\"publisher\": \"\", \"tweet\": \"%s\"}]", PUBLISHER, TWEET, TWEET)))
+                .andExpect(status().is(OK.value()))
+                .andReturn();
+
+        List<PublishResultMessage> results = new ObjectMapper().readValue(postResult.getResponse().getContentAsString(),
+                new TypeReference<List<PublishResultMessage>>() {});
+        assertThat(results.get(0).getId()).isEqualTo(5L);
+        assertThat(results.get(0).getError()).isNull();
+        assertThat(results.get(1).getId()).isNull();
+        assertThat(results.get(1).getError().getMessage()).isEqualTo(EXCEPTION_MESSAGE);
+        assertThat(results.get(1).getError().getExceptionClass()).isEqualTo("IllegalArgumentException");
+    }
+
     @Test
     public void shouldReturn200WhenDiscardingAValidTweet() throws Exception {
         Long tweetId = 1L;
@@ -83,6 +150,24 @@ public class TweetControllerTest {
         verify(tweetService).discardTweet(tweetId);
     }
 
+    @Test
+    public void shouldReturnAResultPerTweetWhenDiscardingABatch() throws Exception {
+        when(tweetService.discardTweets(Arrays.asList(1L, 2L, null))).thenReturn(Arrays.asList(
+                DiscardOutcome.DISCARDED, DiscardOutcome.ALREADY_DISCARDED, DiscardOutcome.NOT_FOUND));
+
+        MvcResult postResult = mockMvc.perform(post(DISCARDED_BATCH_ENDPOINT)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("[{\"tweet\": 1}, {\"tweet\": 2}, {}]"))
+                .andExpect(status().is(OK.value()))
+                .andReturn();
+
+        List<DiscardResultMessage> results = new ObjectMapper().readValue(postResult.getResponse().getContentAsString(),
+                new TypeReference<List<DiscardResultMessage>>() {});
+        assertThat(results).extracting(DiscardResultMessage::getTweet).containsExactly(1L, 2L, null);
+        assertThat(results).extracting(DiscardResultMessage::getResult).containsExactly(
+                DiscardOutcome.DISCARDED, DiscardOutcome.ALREADY_DISCARDED, DiscardOutcome.NOT_FOUND);
+    }
+
     @Test
     public void shouldReturn400WhenDiscardingANonExistentTweet() throws Exception {
         doThrow(new NoSuchElementException(EXCEPTION_MESSAGE)).when(tweetService).discardTweet(anyLong());
@@ -112,11 +197,9 @@ public class TweetControllerTest {
     @Test
     public void shouldReturnAllPublishedTweets() throws Exception {
         int numberOfTweets = 10;
-        when(tweetService.listAllTweets()).thenReturn(listOfTweets(numberOfTweets, false));
+        doAnswer(streamOf(listOfTweets(numberOfTweets, false))).when(tweetService).streamAllTweets(any());
 
-        MvcResult getResult = mockMvc.perform(get(TWEET_ENDPOINT))
-                .andExpect(status().is(OK.value()))
-                .andReturn();
+        MvcResult getResult = performStreaming(get(TWEET_ENDPOINT));
 
         String content = getResult.getResponse().getContentAsString();
         assertThat(new ObjectMapper().readValue(content, List.class).size()).isEqualTo(numberOfTweets);
@@ -129,11 +212,9 @@ public class TweetControllerTest {
     @Test
     public void shouldReturnAllDiscardedTweets() throws Exception {
         int numberOfTweets = 10;
-        when(tweetService.listAllDiscardedTweets()).thenReturn(listOfTweets(numberOfTweets, true));
+        doAnswer(streamOf(listOfTweets(numberOfTweets, true))).when(tweetService).streamAllDiscardedTweets(any());
 
-        MvcResult getResult = mockMvc.perform(get(DISCARDED_ENDPOINT))
-                .andExpect(status().is(OK.value()))
-                .andReturn();
+        MvcResult getResult = performStreaming(get(DISCARDED_ENDPOINT));
 
         String content = getResult.getResponse().getContentAsString();
         assertThat(new ObjectMapper().readValue(content, List.class).size()).isEqualTo(numberOfTweets);
@@ -142,6 +223,125 @@ public class TweetControllerTest {
         assertThat(tweetList.get(0).getTweet()).isEqualTo("tweet number: 0");
     }
 
+    @Test
+    public void shouldStreamTheSameBodyAsASerializedList() throws Exception {
+        List<Tweet> tweets = listOfTweets(25, false);
+        doAnswer(streamOf(tweets)).when(tweetService).streamAllTweets(any());
+
+        MvcResult getResult = performStreaming(get(TWEET_ENDPOINT));
+
+        assertThat(getResult.getResponse().getContentType()).isEqualTo(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        assertThat(getResult.getResponse().getContentAsByteArray()).isEqualTo(objectMapper.writeValueAsBytes(tweets));
+    }
+
+    @Test
+    public void shouldReturnAPageOfPublishedTweetsWithNextCursor() throws Exception {
+        List<Tweet> page = listOfTweets(2, false);
+        page.get(1).setId(7L);
+        when(tweetService.listTweets(null, 2)).thenReturn(page);
+
+        MvcResult getResult = mockMvc.perform(get(TWEET_ENDPOINT).param("limit", "2"))
+                .andExpect(status().is(OK.value()))
+                .andReturn();
+
+        String content = getResult.getResponse().getContentAsString();
+        assertThat(new ObjectMapper().readValue(content, List.class).size()).isEqualTo(2);
+        assertThat(getResult.getResponse().getHeader(TweetController.NEXT_CURSOR_HEADER))
+                .isEqualTo(TweetCursor.of(page.get(1).getPublicationDate(), 7L).toToken());
+    }
+
+    @Test
+    public void shouldFollowCursorWithDefaultPageSize() throws Exception {
+        TweetCursor cursor = TweetCursor.of(new Date(), 42L);
+        when(tweetService.listTweets(cursor, TweetController.DEFAULT_PAGE_SIZE)).thenReturn(listOfTweets(3, false));
+
+        MvcResult getResult = mockMvc.perform(get(TWEET_ENDPOINT).param("after", cursor.toToken()))
+                .andExpect(status().is(OK.value()))
+                .andReturn();
+
+        assertThat(getResult.getResponse().getHeader(TweetController.NEXT_CURSOR_HEADER)).isNull();
+        verify(tweetService).listTweets(cursor, TweetController.DEFAULT_PAGE_SIZE);
+        verify(tweetService, never()).listAllTweets();
+    }
+
+    @Test
+    public void shouldReturnAPageOfTweetsOfAPublisher() throws Exception {
+        List<Tweet> page = Collections.singletonList(tweetWithId(4L));
+        when(tweetService.listTweetsByPublisher(PUBLISHER, null, TweetController.DEFAULT_PAGE_SIZE)).thenReturn(page);
+
+        MvcResult getResult = mockMvc.perform(get(TWEET_ENDPOINT).param("publisher", PUBLISHER))
+                .andExpect(status().is(OK.value()))
+                .andReturn();
+
+        assertThat(new ObjectMapper().readValue(getResult.getResponse().getContentAsString(), List.class).size()).isEqualTo(1);
+        assertThat(getResult.getResponse().getHeader(TweetController.NEXT_CURSOR_HEADER)).isNull();
+        verify(tweetService, never()).streamAllTweets(any());
+        verify(tweetService, never()).listTweets(any(), anyInt());
+    }
+
+    @Test
+    public void shouldReturnAPageOfDiscardedTweetsWithNextCursor() throws Exception {
+        List<Tweet> page = listOfTweets(1, true);
+        page.get(0).setId(3L);
+        page.get(0).setDiscardedDate(new Date());
+        when(tweetService.listDiscardedTweets(null, 1)).thenReturn(page);
+
+        MvcResult getResult = mockMvc.perform(get(DISCARDED_ENDPOINT).param("limit", "1"))
+                .andExpect(status().is(OK.value()))
+                .andReturn();
+
+        assertThat(getResult.getResponse().getHeader(TweetController.NEXT_CURSOR_HEADER))
+                .isEqualTo(TweetCursor.of(page.get(0).getDiscardedDate(), 3L).toToken());
+    }
+
+    @Test
+    public void shouldReturnAPageOfSearchResultsWithNextCursor() throws Exception {
+        List<Tweet> page = Collections.singletonList(tweetWithId(9L));
+        when(tweetService.searchTweets("how", PUBLISHER, null, 1)).thenReturn(page);
+
+        MvcResult getResult = mockMvc.perform(get(SEARCH_ENDPOINT).param("q", "how").param("publisher", PUBLISHER).param("limit", "1"))
+                .andExpect(status().is(OK.value()))
+                .andReturn();
+
+        assertThat(getResult.getResponse().getHeader(TweetController.NEXT_CURSOR_HEADER))
+                .isEqualTo(TweetCursor.of(page.get(0).getPublicationDate(), 9L).toToken());
+    }
+
+    @Test
+    public void shouldReturn400WhenSearchingWithoutWords() throws Exception {
+        when(tweetService.searchTweets(null, null, null, TweetController.DEFAULT_PAGE_SIZE))
+                .thenThrow(new IllegalArgumentException(EXCEPTION_MESSAGE));
+
+        mockMvc.perform(get(SEARCH_ENDPOINT)).andExpect(status().is(BAD_REQUEST.value()));
+    }
+
+    @Test
+    public void shouldReturn400WhenCursorIsMalformed() throws Exception {
+        MvcResult getResult = mockMvc.perform(get(TWEET_ENDPOINT).param("after", "not-a-cursor"))
+                .andExpect(status().is(BAD_REQUEST.value())).andReturn();
+
+        String content = getResult.getResponse().getContentAsString();
+        ExceptionMessage result = new ObjectMapper().readValue(content, ExceptionMessage.class);
+        assertThat(result.getExceptionClass()).isEqualTo("IllegalArgumentException");
+    }
+
+    private MvcResult performStreaming(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        MvcResult getResult = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(getResult))
+                .andExpect(status().is(OK.value()));
+        return getResult;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Answer<Void> streamOf(List<Tweet> tweets) {
+        return invocation -> {
+            tweets.forEach((Consumer<Tweet>) invocation.getArguments()[0]);
+            return null;
+        };
+    }
+
     private static MockHttpServletRequestBuilder newTweet(String publisher, String tweet) {
         return post(TWEET_ENDPOINT)
                 .contentType(MediaType.APPLICATION_JSON_UTF8)
@@ -154,6 +354,12 @@ public class TweetControllerTest {
                 .content(format("{\"tweet\": \"%d\"}", id));
     }
 
+    private static Tweet tweetWithId(Long id) {
+        Tweet tweet = new Tweet(PUBLISHER, TWEET, false, new Date());
+        tweet.setId(id);
+        return tweet;
+    }
+
     private static List<Tweet> listOfTweets(int numberOfTweets, boolean discarded) {
         List<Tweet> tweetList = new ArrayList<>();
         IntStream.range(0, numberOfTweets).forEach(x -> tweetList.add(
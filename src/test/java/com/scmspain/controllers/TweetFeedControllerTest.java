@@ -0,0 +1,105 @@
+package com.scmspain.controllers;
+
+import com.scmspain.controllers.feed.TweetFeedBroadcaster;
+import com.scmspain.entities.Tweet;
+import com.scmspain.events.TweetDiscardedEvent;
+import com.scmspain.events.TweetPublishedEvent;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"tweets.feed.enabled=true", "tweets.feed.history-size=2", "tweets.feed.buffer-size=1"})
+@AutoConfigureMockMvc
+public class TweetFeedControllerTest {
+
+    private static String FEED_ENDPOINT = "/feed";
+    // only events already written up to the blank line ending them
+    private static Pattern EVENT_ID = Pattern.compile("^id:(\\d+)\n(?:.+\n)*\n", Pattern.MULTILINE);
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private TweetFeedBroadcaster broadcaster;
+
+    @Test
+    public void shouldPushPublishedAndDiscardedTweets() throws Exception {
+        MvcResult feed = subscribe(get(FEED_ENDPOINT));
+
+        broadcaster.onPublished(new TweetPublishedEvent(tweet(1L)));
+        awaitEvents(feed, 1);
+        broadcaster.onDiscarded(new TweetDiscardedEvent(1L, new Date()));
+
+        String body = awaitEvents(feed, 2);
+        assertThat(feed.getResponse().getContentType()).startsWith("text/event-stream");
+        assertThat(body).contains("event:published\ndata:{").contains("\"tweet\":\"How are you?\"")
+                .contains("event:discarded\ndata:{").contains("\"discardedDate\":");
+    }
+
+    @Test
+    public void shouldResumeAfterTheLastEventIdFromFurtherBackThanTheBuffer() throws Exception {
+        MvcResult first = subscribe(get(FEED_ENDPOINT));
+        for (int id = 1; id <= 3; id++) {
+            broadcaster.onPublished(new TweetPublishedEvent(tweet((long) id)));
+            awaitEvents(first, id);
+        }
+        List<String> ids = eventIds(first.getResponse().getContentAsString());
+
+        MvcResult resumed = subscribe(get(FEED_ENDPOINT).header(TweetFeedController.LAST_EVENT_ID_HEADER, ids.get(0)));
+
+        assertThat(eventIds(awaitEvents(resumed, 2))).containsExactly(ids.get(1), ids.get(2));
+    }
+
+    @Test
+    public void shouldAskToResetWhenTheMissedEventsAreNoLongerKept() throws Exception {
+        MvcResult feed = subscribe(get(FEED_ENDPOINT).header(TweetFeedController.LAST_EVENT_ID_HEADER, "1"));
+
+        assertThat(awaitEvents(feed, 1)).contains("event:reset");
+    }
+
+    private MvcResult subscribe(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        return mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+    }
+
+    private static String awaitEvents(MvcResult feed, int numberOfEvents) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        String body = feed.getResponse().getContentAsString();
+        while (eventIds(body).size() < numberOfEvents && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            body = feed.getResponse().getContentAsString();
+        }
+        assertThat(eventIds(body)).hasSize(numberOfEvents);
+        return body;
+    }
+
+    private static List<String> eventIds(String body) {
+        List<String> ids = new ArrayList<>();
+        Matcher matcher = EVENT_ID.matcher(body);
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+        }
+        return ids;
+    }
+
+    private static Tweet tweet(Long id) {
+        Tweet tweet = new Tweet("Yo", "How are you?", false, new Date());
+        tweet.setId(id);
+        return tweet;
+    }
+}
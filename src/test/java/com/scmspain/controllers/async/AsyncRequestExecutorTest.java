@@ -0,0 +1,89 @@
+package com.scmspain.controllers.async;
+
+import com.scmspain.services.metrics.CounterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {AsyncRequestExecutor.class, CounterRegistry.class})
+@TestPropertySource(properties = {"tweets.async.enabled=true", "tweets.async.threads=1", "tweets.async.queue-capacity=1",
+        "tweets.metrics.export-interval-ms=3600000"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class AsyncRequestExecutorTest {
+
+    @Autowired
+    private AsyncRequestExecutor executor;
+    @Autowired
+    private CounterRegistry counterRegistry;
+
+    @MockBean
+    @Qualifier("scm")
+    private MetricWriter metricWriter;
+
+    @Test
+    public void shouldSetTheResultOfTheWork() throws Exception {
+        DeferredResult<String> result = executor.submit("list", () -> "done");
+
+        while (!result.hasResult()) {
+            Thread.sleep(5);
+        }
+        assertThat(result.getResult()).isEqualTo("done");
+    }
+
+    @Test
+    public void shouldRejectWorkWhenTheQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit("list", () -> {
+            started.countDown();
+            await(release);
+            return null;
+        });
+        started.await();
+        executor.submit("list", () -> null);
+
+        try {
+            executor.submit("list", () -> null);
+            fail("Work should have been rejected");
+        } catch (RejectedExecutionException ex) {
+            assertThat(counterRegistry.counter("async-rejected-requests").count()).isEqualTo(1);
+        }
+        assertThat(metrics()).containsEntry("async.queue.depth", 1).containsEntry("async.queue.remaining", 0)
+                .containsEntry("async.active-threads", 1);
+        release.countDown();
+    }
+
+    private Map<String, Number> metrics() {
+        Map<String, Number> metrics = new HashMap<>();
+        for (Metric<?> metric : executor.metrics()) {
+            metrics.put(metric.getName(), metric.getValue());
+        }
+        return metrics;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.scmspain.controllers.cache;
+
+import com.scmspain.controllers.cache.TweetResponseCache.Listing;
+import com.scmspain.events.TweetDiscardedEvent;
+import com.scmspain.events.TweetPublishedEvent;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Date;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TweetResponseCache.class)
+@TestPropertySource(properties = {"tweets.response-cache.enabled=true", "tweets.response-cache.max-bytes=16"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class TweetResponseCacheTest {
+
+    @Autowired
+    private TweetResponseCache responseCache;
+
+    @Test
+    public void shouldKeepTheCapturedBodyForTheCurrentVersion() throws Exception {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        CachedListing miss = responseCache.lookup(Listing.PUBLISHED);
+
+        write(responseCache.capture(Listing.PUBLISHED, miss, response), "[]");
+
+        CachedListing hit = responseCache.lookup(Listing.PUBLISHED);
+        assertThat(response.toString("UTF-8")).isEqualTo("[]");
+        assertThat(hit.getBody()).isEqualTo("[]".getBytes(UTF_8));
+        assertThat(hit.getEtag()).isEqualTo(miss.getEtag());
+    }
+
+    @Test
+    public void shouldChangeVersionsOnPublishAndDiscard() {
+        String published = responseCache.lookup(Listing.PUBLISHED).getEtag();
+        String discarded = responseCache.lookup(Listing.DISCARDED).getEtag();
+
+        responseCache.onPublished(new TweetPublishedEvent(null));
+
+        assertThat(responseCache.lookup(Listing.PUBLISHED).getEtag()).isNotEqualTo(published);
+        assertThat(responseCache.lookup(Listing.DISCARDED).getEtag()).isEqualTo(discarded);
+
+        responseCache.onDiscarded(new TweetDiscardedEvent(1L, new Date()));
+
+        assertThat(responseCache.lookup(Listing.DISCARDED).getEtag()).isNotEqualTo(discarded);
+    }
+
+    @Test
+    public void shouldNotKeepABodyBuiltForAnOutdatedVersion() throws Exception {
+        CachedListing miss = responseCache.lookup(Listing.PUBLISHED);
+        OutputStream capture = responseCache.capture(Listing.PUBLISHED, miss, new ByteArrayOutputStream());
+
+        responseCache.onPublished(new TweetPublishedEvent(null));
+        write(capture, "[]");
+
+        assertThat(responseCache.lookup(Listing.PUBLISHED).getBody()).isNull();
+    }
+
+    @Test
+    public void shouldNotKeepBodiesBiggerThanTheLimit() throws Exception {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        String body = "[\"0123456789abcdef\"]";
+
+        write(responseCache.capture(Listing.DISCARDED, responseCache.lookup(Listing.DISCARDED), response), body);
+
+        assertThat(response.toString("UTF-8")).isEqualTo(body);
+        assertThat(responseCache.lookup(Listing.DISCARDED).getBody()).isNull();
+    }
+
+    private static void write(OutputStream capture, String body) throws Exception {
+        capture.write(body.getBytes(UTF_8));
+        capture.close();
+    }
+}
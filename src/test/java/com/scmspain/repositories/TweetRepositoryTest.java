@@ -3,17 +3,25 @@ package com.scmspain.repositories;
 import com.scmspain.configuration.TestConfiguration;
 import com.scmspain.entities.Tweet;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import javax.persistence.EntityManager;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -25,6 +33,9 @@ public class TweetRepositoryTest {
     @Autowired
     TweetRepository tweetRepository;
 
+    @Autowired
+    EntityManager entityManager;
+
     @Test
     public void shouldFindAllByDiscardedFalseOrderByPublicationDateDesc() {
         int numberOfTweets = 20;
@@ -57,6 +68,178 @@ public class TweetRepositoryTest {
         assertThat(tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDesc().size()).isZero();
     }
 
+    @Test
+    public void shouldSeekPublishedTweetsByCursor() {
+        Date sameDate = new Date();
+        List<Tweet> tweetList = new ArrayList<>();
+        IntStream.range(0, 5).forEach(x -> tweetList.add(
+                new Tweet(String.format("publisher%d", x), String.format("tweet number: %d", x), false, sameDate)));
+        tweetList.add(new Tweet("older", "older tweet", false, dateWithOffset(sameDate, -1)));
+        tweetRepository.save(tweetList);
+
+        List<Tweet> firstPage = tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(new PageRequest(0, 3));
+        Tweet last = firstPage.get(2);
+        List<Tweet> secondPage = tweetRepository.findPublishedAfterCursor(last.getPublicationDate(), last.getId(), new PageRequest(0, 3));
+
+        assertThat(firstPage).extracting(Tweet::getTweet)
+                .containsExactly("tweet number: 4", "tweet number: 3", "tweet number: 2");
+        assertThat(secondPage).extracting(Tweet::getTweet)
+                .containsExactly("tweet number: 1", "tweet number: 0", "older tweet");
+    }
+
+    @Test
+    public void shouldSeekDiscardedTweetsByCursor() {
+        int numberOfTweets = 5;
+        List<Tweet> tweetList = new ArrayList<>();
+        IntStream.range(0, numberOfTweets).forEach(x -> tweetList.add(
+                getDiscardedTweet(String.format("publisher%d", x), String.format("tweet number: %d", x), dateWithOffset(new Date(), x))));
+        tweetRepository.save(tweetList);
+
+        List<Tweet> firstPage = tweetRepository.findAllByDiscardedTrueOrderByDiscardedDateDescIdDesc(new PageRequest(0, 2));
+        Tweet last = firstPage.get(1);
+        List<Tweet> secondPage = tweetRepository.findDiscardedAfterCursor(last.getDiscardedDate(), last.getId(), new PageRequest(0, 10));
+
+        assertThat(firstPage).extracting(Tweet::getTweet).containsExactly("tweet number: 4", "tweet number: 3");
+        assertThat(secondPage).extracting(Tweet::getTweet)
+                .containsExactly("tweet number: 2", "tweet number: 1", "tweet number: 0");
+    }
+
+    @Test
+    public void shouldStreamPublishedTweetsOrderedByPublicationDate() {
+        int numberOfTweets = 20;
+        List<Tweet> tweetList = new ArrayList<>();
+        IntStream.range(0, numberOfTweets).forEach(x -> tweetList.add(
+                new Tweet(String.format("publisher%d", x), String.format("tweet number: %d", x), false, dateWithOffset(new Date(), x))));
+        tweetList.add(getDiscardedTweet("discarded", "discarded tweet", new Date()));
+        tweetRepository.save(tweetList);
+
+        try (Stream<Tweet> tweets = tweetRepository.streamAllPublished()) {
+            assertThat(tweets.map(Tweet::getTweet).collect(Collectors.toList()))
+                    .isEqualTo(tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDesc().stream()
+                            .map(Tweet::getTweet).collect(Collectors.toList()));
+        }
+        try (Stream<Tweet> tweets = tweetRepository.streamAllDiscarded()) {
+            assertThat(tweets.map(Tweet::getTweet).collect(Collectors.toList())).containsExactly("discarded tweet");
+        }
+    }
+
+    @Test
+    public void shouldListDetachedTweetsHoldingEveryColumn() {
+        Tweet discarded = getDiscardedTweet("publisher", "discarded tweet", new Date());
+        discarded.setPre2015MigrationStatus(7L);
+        tweetRepository.save(discarded);
+
+        List<Tweet> resultedTweetList = tweetRepository.findAllByDiscardedTrueOrderByDiscardedDateDescIdDesc(new PageRequest(0, 1));
+
+        Tweet listed = resultedTweetList.get(0);
+        assertThat(entityManager.contains(listed)).isFalse();
+        assertThat(listed.getId()).isEqualTo(discarded.getId());
+        assertThat(listed.getPublisher()).isEqualTo("publisher");
+        assertThat(listed.getTweet()).isEqualTo("discarded tweet");
+        assertThat(listed.getDiscarded()).isTrue();
+        assertThat(listed.getPublicationDate().getTime()).isEqualTo(discarded.getPublicationDate().getTime());
+        assertThat(listed.getDiscardedDate().getTime()).isEqualTo(discarded.getDiscardedDate().getTime());
+        assertThat(listed.getPre2015MigrationStatus()).isEqualTo(7L);
+    }
+
+    @Test
+    public void shouldDiscardATweetOnlyOnce() {
+        Tweet tweet = tweetRepository.save(new Tweet("publisher", "tweet", false, new Date()));
+        Date discardedDate = new Date();
+
+        assertThat(tweetRepository.discard(tweet.getId(), discardedDate)).isEqualTo(1);
+        assertThat(tweetRepository.discard(tweet.getId(), new Date())).isZero();
+        assertThat(tweetRepository.discard(tweet.getId() + 1, new Date())).isZero();
+
+        entityManager.clear();
+        Tweet discarded = tweetRepository.findOne(tweet.getId());
+        assertThat(discarded.getDiscarded()).isTrue();
+        assertThat(discarded.getDiscardedDate().getTime()).isEqualTo(discardedDate.getTime());
+    }
+
+    @Test
+    public void shouldDiscardABatchOfTweetsThatAreNotDiscardedYet() {
+        Tweet published = tweetRepository.save(new Tweet("publisher", "published tweet", false, new Date()));
+        Tweet discarded = tweetRepository.save(getDiscardedTweet("publisher", "discarded tweet", new Date()));
+        List<Long> ids = Arrays.asList(published.getId(), discarded.getId(), discarded.getId() + 1);
+
+        assertThat(tweetRepository.findAllForDiscard(ids)).extracting(Tweet::getId)
+                .containsExactly(published.getId(), discarded.getId());
+        assertThat(tweetRepository.discardAll(ids, new Date())).isEqualTo(1);
+        assertThat(tweetRepository.findOne(published.getId()).getDiscarded()).isTrue();
+    }
+
+    @Test
+    public void shouldPageAllTweetsInTheRequestedOrder() {
+        Date now = new Date();
+        tweetRepository.save(Arrays.asList(
+                new Tweet("guybrush", "tweet number: 0", false, now),
+                getDiscardedTweet("elaine", "tweet number: 1", dateWithOffset(now, 1)),
+                new Tweet("lechuck", "tweet number: 2", false, dateWithOffset(now, 2))));
+
+        Page<Tweet> firstPage = tweetRepository.findAll(new PageRequest(0, 2, Sort.Direction.DESC, "publicationDate"));
+        Page<Tweet> secondPage = tweetRepository.findAll(new PageRequest(1, 2, Sort.Direction.DESC, "publicationDate"));
+
+        assertThat(firstPage.getTotalElements()).isEqualTo(3);
+        assertThat(firstPage.getContent()).extracting(Tweet::getTweet).containsExactly("tweet number: 2", "tweet number: 1");
+        assertThat(secondPage.getContent()).extracting(Tweet::getTweet).containsExactly("tweet number: 0");
+        assertThat(tweetRepository.findAll(new Sort(Sort.Direction.ASC, "publisher"))).extracting(Tweet::getPublisher)
+                .containsExactly("elaine", "guybrush", "lechuck");
+    }
+
+    @Test
+    @Category(TweetTableOnly.class)
+    public void shouldUseAnIndexToListPublishedTweets() {
+        String plan = explain("SELECT * FROM tweet WHERE discarded = FALSE ORDER BY publication_date DESC, id DESC");
+
+        assertThat(plan).doesNotContain("tablescan");
+        assertThat(plan).contains(Tweet.PUBLISHED_INDEX);
+        assertThat(plan).contains("index sorted");
+    }
+
+    @Test
+    @Category(TweetTableOnly.class)
+    public void shouldUseAnIndexToListDiscardedTweets() {
+        String plan = explain("SELECT * FROM tweet WHERE discarded = TRUE ORDER BY discarded_date DESC, id DESC");
+
+        assertThat(plan).doesNotContain("tablescan");
+        assertThat(plan).contains(Tweet.DISCARDED_INDEX);
+        assertThat(plan).contains("index sorted");
+    }
+
+    @Test
+    public void shouldListPublishedTweetsOfAPublisherByCursor() {
+        Date now = new Date();
+        List<Tweet> tweetList = new ArrayList<>();
+        IntStream.range(0, 3).forEach(x -> tweetList.add(
+                new Tweet("guybrush", String.format("tweet number: %d", x), false, dateWithOffset(now, x))));
+        tweetList.add(new Tweet("lechuck", "other publisher", false, now));
+        tweetList.add(getDiscardedTweet("guybrush", "discarded tweet", now));
+        tweetRepository.save(tweetList);
+
+        List<Tweet> firstPage = tweetRepository.findPublishedByPublisher("guybrush", new PageRequest(0, 2));
+        Tweet last = firstPage.get(1);
+        List<Tweet> secondPage = tweetRepository.findPublishedByPublisherAfterCursor("guybrush", last.getPublicationDate(),
+                last.getId(), new PageRequest(0, 2));
+
+        assertThat(firstPage).extracting(Tweet::getTweet).containsExactly("tweet number: 2", "tweet number: 1");
+        assertThat(secondPage).extracting(Tweet::getTweet).containsExactly("tweet number: 0");
+    }
+
+    @Test
+    @Category(TweetTableOnly.class)
+    public void shouldUseAnIndexToListTweetsOfAPublisher() {
+        String plan = explain("SELECT * FROM tweet WHERE publisher = 'guybrush' AND discarded = FALSE" +
+                " ORDER BY publication_date DESC, id DESC");
+
+        assertThat(plan).doesNotContain("tablescan");
+        assertThat(plan).contains(Tweet.PUBLISHER_INDEX);
+    }
+
+    private String explain(String sql) {
+        return entityManager.createNativeQuery("EXPLAIN " + sql).getSingleResult().toString().toLowerCase();
+    }
+
     private Date dateWithOffset(Date date, int minutes) {
         Calendar calendar = Calendar.getInstance();
         calendar.setTime(date);
@@ -0,0 +1,8 @@
+package com.scmspain.repositories;
+
+/**
+ * JUnit category of the repository tests that check the tweet table itself, such as the query plans of its indexes,
+ * and mean nothing against the log storage
+ */
+public interface TweetTableOnly {
+}
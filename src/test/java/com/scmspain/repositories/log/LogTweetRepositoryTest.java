@@ -0,0 +1,138 @@
+package com.scmspain.repositories.log;
+
+import com.scmspain.entities.Tweet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.data.domain.PageRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LogTweetRepositoryTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private LogTweetRepository repository;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("tweet-log");
+        repository = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        repository.close();
+    }
+
+    @Test
+    public void shouldReplayTheLogWhenReopened() throws IOException {
+        Date discardedDate = new Date(2000);
+        repository.save(new Tweet("guybrush", "I'm selling these fine leather jackets", false, new Date(1000)));
+        Tweet discarded = repository.save(new Tweet("guybrush", "Look behind you, a three-headed monkey!", false, new Date(1001)));
+        Tweet deleted = repository.save(new Tweet("lechuck", "You fight like a dairy farmer", false, new Date(1002)));
+        repository.discard(discarded.getId(), discardedDate);
+        repository.deleteAllByIdIn(Collections.singletonList(deleted.getId()));
+
+        repository = reopen();
+
+        assertThat(repository.findAllByDiscardedFalseOrderByPublicationDateDesc()).extracting(Tweet::getTweet)
+                .containsExactly("I'm selling these fine leather jackets");
+        assertThat(repository.findOne(discarded.getId()).getDiscardedDate()).isEqualTo(discardedDate);
+        assertThat(repository.exists(deleted.getId())).isFalse();
+        assertThat(repository.save(new Tweet("guybrush", "How appropriate", false, new Date())).getId())
+                .isGreaterThan(deleted.getId());
+    }
+
+    @Test
+    public void shouldRollSegmentsAndCompactTheOldestOnes() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            Tweet tweet = repository.save(new Tweet("publisher" + (i % 2), "tweet number: " + i, false, new Date(i)));
+            if (i % 10 != 0) {
+                repository.delete(tweet.getId());
+            }
+        }
+        int segments = segmentFiles().length;
+
+        repository.compact();
+
+        assertThat(segments).isGreaterThan(1);
+        assertThat(segmentFiles().length).isLessThan(segments);
+        assertThat(repository.findPublishedByPublisher("publisher0", new PageRequest(0, 5))).extracting(Tweet::getTweet)
+                .containsExactly("tweet number: 190", "tweet number: 180", "tweet number: 170", "tweet number: 160",
+                        "tweet number: 150");
+        repository = reopen();
+        assertThat(repository.count()).isEqualTo(20);
+    }
+
+    @Test
+    public void shouldIgnoreATornRecordAtTheEndOfTheLog() throws IOException {
+        String text = "That's the second biggest monkey head I've ever seen!";
+        Tweet tweet = repository.save(new Tweet("guybrush", text, false, new Date()));
+        repository.close();
+        File[] files = segmentFiles();
+        try (RandomAccessFile segment = new RandomAccessFile(files[files.length - 1], "rw")) {
+            // segment header, then the record header, publisher, text and checksum
+            segment.seek(8 + 44 + "guybrush".length() + text.length() + 4);
+            segment.writeInt(100);
+            segment.writeByte(1);
+            segment.seek(SEGMENT_SIZE / 2);
+            segment.writeLong(-1);
+        }
+
+        repository = open();
+        repository.save(new Tweet("guybrush", "Never pay more than 20 bucks for a computer game", false, new Date()));
+        repository = reopen();
+
+        assertThat(repository.count()).isEqualTo(2);
+        assertThat(repository.findOne(tweet.getId()).getPublisher()).isEqualTo("guybrush");
+    }
+
+    @Test
+    public void shouldRejectTweetsWithoutPublisherOrText() throws IOException {
+        Tweet withoutText = new Tweet("guybrush", null, false, new Date());
+
+        assertThatThrownBy(() -> repository.save(withoutText)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> repository.save(new Tweet(null, "Where's the treasure?", false, new Date())))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(withoutText.getId()).isNull();
+        repository = reopen();
+        assertThat(repository.count()).isZero();
+    }
+
+    @Test
+    public void shouldNotOpenADirectoryInUse() {
+        assertThatThrownBy(this::open).isInstanceOf(IllegalStateException.class);
+    }
+
+    private LogTweetRepository open() throws IOException {
+        LogTweetRepository logTweetRepository = new LogTweetRepository(directory, SEGMENT_SIZE, 0.5);
+        logTweetRepository.open();
+        return logTweetRepository;
+    }
+
+    private LogTweetRepository reopen() throws IOException {
+        repository.close();
+        return open();
+    }
+
+    private File[] segmentFiles() {
+        File[] files = directory.listFiles(Segment::isSegment);
+        Arrays.sort(files);
+        return files;
+    }
+}
@@ -0,0 +1,80 @@
+package com.scmspain.services;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.repositories.TweetRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the service against the storage it is configured with, the tweet table by default and the tweet log in
+ * ./gradlew logStorageTest.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TweetServiceIntegrationTest {
+
+    @Autowired
+    private TweetService tweetService;
+    @Autowired
+    private TweetRepository tweetRepository;
+
+    @Before
+    public void setUp() {
+        tweetRepository.deleteAll();
+    }
+
+    @After
+    public void tearDown() {
+        // the service commits, and the tests run after this one on the same log expect it empty
+        tweetRepository.deleteAll();
+    }
+
+    @Test
+    public void shouldListPublishedTweetsUntilTheyAreDiscarded() {
+        tweetService.publishTweet("guybrush", "I'm selling these fine leather jackets");
+        tweetService.publishTweet("lechuck", "You fight like a dairy farmer");
+        Tweet insult = tweetService.listAllTweets().stream()
+                .filter(tweet -> tweet.getPublisher().equals("lechuck")).findFirst().get();
+
+        tweetService.discardTweet(insult.getId());
+
+        assertThat(tweetService.listAllTweets()).extracting(Tweet::getPublisher).containsExactly("guybrush");
+        assertThat(tweetService.listAllDiscardedTweets()).extracting(Tweet::getId).containsExactly(insult.getId());
+        assertThat(tweetService.getTweet(insult.getId()).getDiscardedDate()).isNotNull();
+        assertThatThrownBy(() -> tweetService.discardTweet(insult.getId())).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> tweetService.discardTweet(insult.getId() + 1000)).isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    public void shouldPageABatchOfTweetsAndDiscardItById() {
+        List<PublishOutcome> published = tweetService.publishTweets(Arrays.asList(
+                new Tweet("guybrush", "Look behind you, a three-headed monkey!", false, null),
+                new Tweet("guybrush", "How appropriate", false, null),
+                new Tweet("guybrush", "", false, null)));
+
+        List<Tweet> firstPage = tweetService.listTweets(null, 1);
+        Tweet last = firstPage.get(0);
+        List<Tweet> secondPage = tweetService.listTweets(TweetCursor.of(last.getPublicationDate(), last.getId()), 2);
+        Long first = published.get(0).getId();
+        List<DiscardOutcome> discarded = tweetService.discardTweets(Arrays.asList(first, first, null));
+
+        assertThat(published).extracting(PublishOutcome::isPublished).containsExactly(true, true, false);
+        assertThat(firstPage).extracting(Tweet::getTweet).containsExactly("How appropriate");
+        assertThat(secondPage).extracting(Tweet::getTweet).containsExactly("Look behind you, a three-headed monkey!");
+        assertThat(discarded).containsExactly(DiscardOutcome.DISCARDED, DiscardOutcome.ALREADY_DISCARDED,
+                DiscardOutcome.NOT_FOUND);
+        assertThat(tweetService.listDiscardedTweets(null, 10)).extracting(Tweet::getId).containsExactly(first);
+    }
+}
@@ -2,33 +2,60 @@ package com.scmspain.services;
 
 import com.scmspain.entities.Tweet;
 import com.scmspain.repositories.TweetRepository;
+import com.scmspain.services.archive.TweetArchive;
+import com.scmspain.services.metrics.CounterRegistry;
+import com.scmspain.services.ratelimit.PublisherRateLimiter;
+import com.scmspain.services.ratelimit.RateLimitExceededException;
+import com.scmspain.services.search.TweetSearchIndex;
+import com.scmspain.services.timeline.PublisherTimelineCache;
+import com.scmspain.services.timeline.TweetTimelineCache;
+import com.scmspain.services.writebehind.WriteBehindPublisher;
 import com.scmspain.utils.TweetValidator;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.boot.actuate.metrics.writer.Delta;
 import org.springframework.boot.actuate.metrics.writer.MetricWriter;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static java.util.Collections.emptyList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 
 @RunWith(SpringJUnit4ClassRunner.class)
-@ContextConfiguration(classes = TweetService.class)
+@ContextConfiguration(classes = {TweetService.class, CounterRegistry.class})
+@TestPropertySource(properties = "tweets.metrics.export-interval-ms=3600000")
 public class TweetServiceTest {
 
+    private static final String PUBLISHED = "times-published-tweets";
+    private static final String QUERIED = "times-queried-tweets";
+    private static final String DISCARDED = "times-discarded-tweets";
+
     @Autowired
     private TweetService tweetService;
+    @Autowired
+    private CounterRegistry counterRegistry;
 
     @MockBean
     @Qualifier("scm")
@@ -37,13 +64,39 @@ public class TweetServiceTest {
     private TweetRepository tweetRepository;
     @MockBean
     private TweetValidator tweetValidator;
+    @MockBean
+    private TweetTimelineCache timelineCache;
+    @MockBean
+    private PublisherTimelineCache publisherCache;
+    @MockBean
+    private WriteBehindPublisher writeBehindPublisher;
+    @MockBean
+    private TweetArchive archive;
+    @MockBean
+    private TweetSearchIndex searchIndex;
+    @MockBean
+    private PublisherRateLimiter rateLimiter;
+
+    private Map<String, Long> countsBefore = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        for (String name : new String[]{PUBLISHED, QUERIED, DISCARDED}) {
+            countsBefore.put(name, counterRegistry.counter(name).count());
+        }
+        when(timelineCache.allPublished()).thenReturn(Optional.empty());
+        when(timelineCache.allDiscarded()).thenReturn(Optional.empty());
+        when(timelineCache.publishedPage(any(), anyInt())).thenReturn(Optional.empty());
+        when(timelineCache.discardedPage(any(), anyInt())).thenReturn(Optional.empty());
+        when(publisherCache.publishedPage(any(), any(), anyInt())).thenReturn(Optional.empty());
+    }
 
     @Test
     public void shouldInsertANewTweet() {
         tweetService.publishTweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
         verify(tweetRepository).save(any(Tweet.class));
         verify(tweetValidator).validate(any(Tweet.class));
-        verify(metricWriter).increment(any(Delta.class));
+        assertThat(counted(PUBLISHED)).isEqualTo(1);
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -53,7 +106,93 @@ public class TweetServiceTest {
         tweetService.publishTweet("Guybrush Threepwood", "0htGLagqj5FYMnLPyisXB3RxZSYqceoJwCHVFlk8C3ujBjsxbKYRh7rkfvee5wGHUGNGTnx8TKggFZEhLfFr7XqyBrdZ49YwmQw95B7geXbNEiRSp0ezGARa7e2D1laUbORScJzQjQw95B7geXbNEiRSp0ezGARa7e2D1laUbORScJzQj ");
 
         verify(tweetRepository, never()).save(any(Tweet.class));
-        verify(metricWriter, never()).increment(any(Delta.class));
+        assertThat(counted(PUBLISHED)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldQueueANewTweetWhenWriteBehindIsEnabled() {
+        when(writeBehindPublisher.isEnabled()).thenReturn(true);
+
+        tweetService.publishTweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
+
+        verify(writeBehindPublisher).enqueue(any(Tweet.class));
+        verify(tweetRepository, never()).save(any(Tweet.class));
+        assertThat(counted(PUBLISHED)).isEqualTo(1);
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void shouldNotCountATweetRejectedByTheWriteBehindQueue() {
+        when(writeBehindPublisher.isEnabled()).thenReturn(true);
+        doThrow(new RejectedExecutionException("full")).when(writeBehindPublisher).enqueue(any(Tweet.class));
+
+        try {
+            tweetService.publishTweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
+        } finally {
+            assertThat(counted(PUBLISHED)).isEqualTo(0);
+        }
+    }
+
+    @Test(expected = RateLimitExceededException.class)
+    public void shouldNotInsertATweetOverTheRateLimit() {
+        doThrow(new RateLimitExceededException("Guybrush Threepwood", 1)).when(rateLimiter).acquire("Guybrush Threepwood", 1);
+
+        try {
+            tweetService.publishTweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.");
+        } finally {
+            verify(tweetRepository, never()).save(any(Tweet.class));
+            assertThat(counted(PUBLISHED)).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void shouldTakeTheTokensOfTheValidTweetsOfABatchPerPublisher() {
+        when(rateLimiter.isEnabled()).thenReturn(true);
+        Tweet invalid = new Tweet("LeChuck", "", false, null);
+        doThrow(new IllegalArgumentException("ex")).when(tweetValidator).validate(invalid);
+
+        tweetService.publishTweets(Arrays.asList(
+                new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.", false, null),
+                new Tweet("Elaine Marley", "Guybrush, you can't stay here.", false, null),
+                new Tweet("Guybrush Threepwood", "Look behind you, a three-headed monkey!", false, null),
+                invalid));
+
+        Map<String, Integer> tweetsByPublisher = new HashMap<>();
+        tweetsByPublisher.put("Guybrush Threepwood", 2);
+        tweetsByPublisher.put("Elaine Marley", 1);
+        verify(rateLimiter).acquire(tweetsByPublisher);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldInsertABatchOfTweetsReportingInvalidOnes() {
+        Tweet valid = new Tweet("Guybrush Threepwood", "I am Guybrush Threepwood, mighty pirate.", false, null);
+        Tweet invalid = new Tweet("", "Look behind you, a three-headed monkey!", false, null);
+        doThrow(new IllegalArgumentException("ex")).when(tweetValidator).validate(invalid);
+
+        List<PublishOutcome> outcomes = tweetService.publishTweets(Arrays.asList(valid, invalid));
+
+        assertThat(outcomes).extracting(PublishOutcome::isPublished).containsExactly(true, false);
+        assertThat(outcomes.get(1).getError().getMessage()).isEqualTo("ex");
+        assertThat(valid.getPublicationDate()).isNotNull();
+        verify(tweetRepository).save((Iterable<Tweet>) argThat(contains(valid)));
+        assertThat(counted(PUBLISHED)).isEqualTo(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldNotInsertABatchOfInvalidTweets() {
+        doThrow(new IllegalArgumentException("ex")).when(tweetValidator).validate(any());
+
+        List<PublishOutcome> outcomes = tweetService.publishTweets(Collections.singletonList(new Tweet()));
+
+        assertThat(outcomes.get(0).isPublished()).isFalse();
+        verify(tweetRepository, never()).save(any(Iterable.class));
+        assertThat(counted(PUBLISHED)).isEqualTo(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotInsertABatchBiggerThanTheLimit() {
+        tweetService.publishTweets(Collections.nCopies(TweetService.MAX_BATCH_SIZE + 1, new Tweet()));
     }
 
     @Test
@@ -72,7 +211,7 @@ public class TweetServiceTest {
 
         assertThat(returnedTweetList.size()).isEqualTo(1);
         assertThat(returnedTweetList.get(0).getTweet()).isEqualTo(tweetList.get(0).getTweet());
-        verify(metricWriter).increment(any(Delta.class));
+        assertThat(counted(QUERIED)).isEqualTo(1);
     }
 
     @Test
@@ -82,7 +221,7 @@ public class TweetServiceTest {
         List<Tweet> returnedTweetList = tweetService.listAllTweets();
 
         assertThat(returnedTweetList.size()).isZero();
-        verify(metricWriter).increment(any(Delta.class));
+        assertThat(counted(QUERIED)).isEqualTo(1);
     }
 
     @Test
@@ -95,7 +234,7 @@ public class TweetServiceTest {
 
         assertThat(returnedTweetList.size()).isEqualTo(1);
         assertThat(returnedTweetList.get(0).getTweet()).isEqualTo(tweetList.get(0).getTweet());
-        verify(metricWriter).increment(any(Delta.class));
+        assertThat(counted(QUERIED)).isEqualTo(1);
     }
 
     @Test
@@ -105,41 +244,247 @@ public class TweetServiceTest {
         List<Tweet> returnedTweetList = tweetService.listAllDiscardedTweets();
 
         assertThat(returnedTweetList.size()).isZero();
-        verify(metricWriter).increment(any(Delta.class));
+        assertThat(counted(QUERIED)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldStreamAllTweets() {
+        int numberOfTweets = 1001;
+        when(tweetRepository.streamAllPublished()).thenReturn(
+                IntStream.range(0, numberOfTweets).mapToObj(x -> new Tweet("me", "tweet", false, new Date())));
+        List<Tweet> streamed = new ArrayList<>();
+
+        tweetService.streamAllTweets(streamed::add);
+
+        assertThat(streamed.size()).isEqualTo(numberOfTweets);
+        assertThat(counted(QUERIED)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldStreamAllDiscardedTweets() {
+        when(tweetRepository.streamAllDiscarded()).thenReturn(Stream.of(new Tweet("me", "tweet", true, new Date())));
+        List<Tweet> streamed = new ArrayList<>();
+
+        tweetService.streamAllDiscardedTweets(streamed::add);
+
+        assertThat(streamed.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldListAllTweetsFromTheTimelineCache() {
+        List<Tweet> cachedList = new ArrayList<>();
+        cachedList.add(new Tweet("me", "tweet", false, new Date()));
+        when(timelineCache.allPublished()).thenReturn(Optional.of(cachedList));
+
+        List<Tweet> returnedTweetList = tweetService.listAllTweets();
+
+        assertThat(returnedTweetList).isEqualTo(cachedList);
+        verify(tweetRepository, never()).findAllByDiscardedFalseOrderByPublicationDateDesc();
+    }
+
+    @Test
+    public void shouldStreamAllTweetsFromTheTimelineCache() {
+        List<Tweet> cachedList = new ArrayList<>();
+        cachedList.add(new Tweet("me", "tweet", false, new Date()));
+        when(timelineCache.allPublished()).thenReturn(Optional.of(cachedList));
+        List<Tweet> streamed = new ArrayList<>();
+
+        tweetService.streamAllTweets(streamed::add);
+
+        assertThat(streamed).isEqualTo(cachedList);
+        verify(tweetRepository, never()).streamAllPublished();
+    }
+
+    @Test
+    public void shouldListAPageOfDiscardedTweetsFromTheTimelineCache() {
+        List<Tweet> cachedList = new ArrayList<>();
+        cachedList.add(new Tweet("me", "tweet", true, new Date()));
+        when(timelineCache.discardedPage(null, 10)).thenReturn(Optional.of(cachedList));
+
+        List<Tweet> returnedTweetList = tweetService.listDiscardedTweets(null, 10);
+
+        assertThat(returnedTweetList).isEqualTo(cachedList);
+        verify(tweetRepository, never()).findAllByDiscardedTrueOrderByDiscardedDateDescIdDesc(any());
+    }
+
+    @Test
+    public void shouldListFirstPageOfTweets() {
+        List<Tweet> tweetList = new ArrayList<>();
+        tweetList.add(new Tweet("me", "tweet", false, new Date()));
+        when(tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(new PageRequest(0, 10))).thenReturn(tweetList);
+
+        List<Tweet> returnedTweetList = tweetService.listTweets(null, 10);
+
+        assertThat(returnedTweetList).isEqualTo(tweetList);
+        assertThat(counted(QUERIED)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldListTweetsAfterCursor() {
+        TweetCursor cursor = TweetCursor.of(new Date(), 5L);
+
+        tweetService.listTweets(cursor, 10);
+
+        verify(tweetRepository).findPublishedAfterCursor(cursor.getDate(), 5L, new PageRequest(0, 10));
+    }
+
+    @Test
+    public void shouldListFirstPageOfTweetsOfAPublisher() {
+        List<Tweet> tweetList = new ArrayList<>();
+        tweetList.add(new Tweet("me", "tweet", false, new Date()));
+        when(tweetRepository.findPublishedByPublisher("me", new PageRequest(0, 10))).thenReturn(tweetList);
+
+        List<Tweet> returnedTweetList = tweetService.listTweetsByPublisher("me", null, 10);
+
+        assertThat(returnedTweetList).isEqualTo(tweetList);
+        assertThat(counted(QUERIED)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldListTweetsOfAPublisherAfterCursor() {
+        TweetCursor cursor = TweetCursor.of(new Date(), 5L);
+
+        tweetService.listTweetsByPublisher("me", cursor, 10);
+
+        verify(tweetRepository).findPublishedByPublisherAfterCursor("me", cursor.getDate(), 5L, new PageRequest(0, 10));
+    }
+
+    @Test
+    public void shouldListTweetsOfAPublisherFromTheCache() {
+        List<Tweet> cachedList = new ArrayList<>();
+        cachedList.add(new Tweet("me", "tweet", false, new Date()));
+        when(publisherCache.publishedPage("me", null, 10)).thenReturn(Optional.of(cachedList));
+
+        List<Tweet> returnedTweetList = tweetService.listTweetsByPublisher("me", null, 10);
+
+        assertThat(returnedTweetList).isEqualTo(cachedList);
+        verify(tweetRepository, never()).findPublishedByPublisher(any(), any());
+    }
+
+    @Test
+    public void shouldListDiscardedTweetsAfterCursor() {
+        TweetCursor cursor = TweetCursor.of(new Date(), 5L);
+
+        tweetService.listDiscardedTweets(cursor, 10);
+
+        verify(tweetRepository).findDiscardedAfterCursor(cursor.getDate(), 5L, new PageRequest(0, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotListAPageBiggerThanTheLimit() {
+        tweetService.listTweets(null, TweetService.MAX_PAGE_SIZE + 1);
+    }
+
+    @Test
+    public void shouldSearchUntilThePageIsFullOfPublishedTweets() {
+        when(searchIndex.isEnabled()).thenReturn(true);
+        when(searchIndex.search(Collections.singleton("pirate"), "guybrush", null, 2)).thenReturn(new long[]{5, 4});
+        when(searchIndex.search(Collections.singleton("pirate"), "guybrush", 4L, 1)).thenReturn(new long[]{3});
+        when(tweetRepository.findPublishedByIdIn(Arrays.asList(5L, 4L))).thenReturn(Collections.singletonList(tweetWithId(5L)));
+        when(tweetRepository.findPublishedByIdIn(Collections.singletonList(3L))).thenReturn(Collections.singletonList(tweetWithId(3L)));
+
+        List<Tweet> page = tweetService.searchTweets("Pirate!", "guybrush", null, 2);
+
+        assertThat(page).extracting(Tweet::getId).containsExactly(5L, 3L);
+        assertThat(counted(QUERIED)).isEqualTo(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotSearchWithoutWordsNorPublisher() {
+        when(searchIndex.isEnabled()).thenReturn(true);
+
+        tweetService.searchTweets(" ... ", null, null, 10);
     }
 
     @Test
     public void shouldDiscardTweet() {
-        Tweet spyTweet = spy(new Tweet("me", "tweet", false, new Date()));
-        when(tweetRepository.findOne(22L)).thenReturn(spyTweet);
+        when(tweetRepository.discard(eq(22L), any(Date.class))).thenReturn(1);
 
         tweetService.discardTweet(22L);
 
-        assertThat(spyTweet.getDiscarded()).isTrue();
-        assertThat(spyTweet.getDiscardedDate()).isNotNull();
-        verify(tweetRepository).save(any(Tweet.class));
-        verify(metricWriter).increment(any(Delta.class));
+        verify(tweetRepository, never()).findOne(anyLong());
+        verify(tweetRepository, never()).save(any(Tweet.class));
+        assertThat(counted(DISCARDED)).isEqualTo(1);
     }
 
     @Test(expected = NoSuchElementException.class)
     public void shouldNotDiscardANonExistentTweet() {
-        when(tweetRepository.findOne(anyLong())).thenReturn(null);
+        when(tweetRepository.discard(eq(22L), any(Date.class))).thenReturn(0);
+        when(tweetRepository.exists(22L)).thenReturn(false);
+
+        try {
+            tweetService.discardTweet(22L);
+        } finally {
+            assertThat(counted(DISCARDED)).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void shouldRestoreAnArchivedTweetBeforeDiscardingIt() {
+        when(archive.isEnabled()).thenReturn(true);
+        when(archive.restorePublished(Collections.singleton(22L))).thenReturn(1);
+        when(tweetRepository.discard(eq(22L), any(Date.class))).thenReturn(0, 1);
 
         tweetService.discardTweet(22L);
 
-        verify(tweetRepository, never()).save(any(Tweet.class));
-        verify(metricWriter, never()).increment(any(Delta.class));
+        verify(tweetRepository, times(2)).discard(eq(22L), any(Date.class));
+        assertThat(counted(DISCARDED)).isEqualTo(1);
     }
 
     @Test(expected = IllegalArgumentException.class)
     public void shouldNotDiscardADiscardedTweet() {
-        Tweet spyTweet = spy(new Tweet("me", "tweet", true, new Date()));
-        when(tweetRepository.findOne(22L)).thenReturn(spyTweet);
+        when(tweetRepository.discard(eq(22L), any(Date.class))).thenReturn(0);
+        when(tweetRepository.exists(22L)).thenReturn(true);
+
+        try {
+            tweetService.discardTweet(22L);
+        } finally {
+            assertThat(counted(DISCARDED)).isEqualTo(0);
+        }
+    }
 
-        tweetService.discardTweet(22L);
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldDiscardABatchWithASingleUpdate() {
+        Tweet published = new Tweet("me", "tweet", false, new Date());
+        published.setId(1L);
+        Tweet discarded = new Tweet("me", "tweet", true, new Date());
+        discarded.setId(2L);
+        when(tweetRepository.findAllForDiscard(any(Collection.class))).thenReturn(Arrays.asList(published, discarded));
+        when(tweetRepository.discardAll(any(Collection.class), any(Date.class))).thenReturn(1);
+
+        List<DiscardOutcome> outcomes = tweetService.discardTweets(Arrays.asList(1L, 2L, 3L, null, 1L));
+
+        assertThat(outcomes).containsExactly(DiscardOutcome.DISCARDED, DiscardOutcome.ALREADY_DISCARDED,
+                DiscardOutcome.NOT_FOUND, DiscardOutcome.NOT_FOUND, DiscardOutcome.ALREADY_DISCARDED);
+        verify(tweetRepository).discardAll((Collection<Long>) argThat(contains(1L)), any(Date.class));
+        assertThat(counted(DISCARDED)).isEqualTo(1);
+    }
 
-        verify(tweetRepository, never()).save(any(Tweet.class));
-        verify(metricWriter, never()).increment(any(Delta.class));
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldNotUpdateWhenNoTweetOfTheBatchCanBeDiscarded() {
+        when(tweetRepository.findAllForDiscard(any(Collection.class))).thenReturn(emptyList());
+
+        List<DiscardOutcome> outcomes = tweetService.discardTweets(Collections.singletonList(3L));
+
+        assertThat(outcomes).containsExactly(DiscardOutcome.NOT_FOUND);
+        verify(tweetRepository, never()).discardAll(any(Collection.class), any(Date.class));
+        assertThat(counted(DISCARDED)).isEqualTo(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotDiscardABatchBiggerThanTheLimit() {
+        tweetService.discardTweets(Collections.nCopies(TweetService.MAX_BATCH_SIZE + 1, 1L));
+    }
+
+    private Tweet tweetWithId(Long id) {
+        Tweet tweet = new Tweet("guybrush", "pirate", false, new Date());
+        tweet.setId(id);
+        return tweet;
     }
 
+    private long counted(String name) {
+        return counterRegistry.counter(name).count() - countsBefore.get(name);
+    }
 }
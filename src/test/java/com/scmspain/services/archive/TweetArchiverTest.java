@@ -0,0 +1,122 @@
+package com.scmspain.services.archive;
+
+import com.scmspain.configuration.TestConfiguration;
+import com.scmspain.entities.Tweet;
+import com.scmspain.repositories.TweetRepository;
+import com.scmspain.services.TweetCursor;
+import com.scmspain.services.TweetService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = TestConfiguration.class, properties = {"tweets.archive.enabled=true",
+        "tweets.archive.published-months=12", "tweets.archive.discarded-months=1", "tweets.archive.batch-size=2"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class TweetArchiverTest {
+
+    private static final Instant NOW = Instant.parse("2017-06-15T12:00:00Z");
+
+    @Autowired
+    private TweetArchiver archiver;
+    @Autowired
+    private TweetService tweetService;
+    @Autowired
+    private TweetRepository tweetRepository;
+
+    private Tweet recent;
+    private Tweet old;
+    private Tweet older;
+    private Tweet discarded;
+
+    @Before
+    public void setUp() {
+        archiver.setClock(Clock.fixed(NOW, ZoneOffset.UTC));
+        recent = published("recent", "2017-06-01T00:00:00Z");
+        old = published("old", "2016-05-31T23:59:59Z");
+        older = published("older", "2015-01-01T00:00:00Z");
+        discarded = discarded("discarded", "2017-04-30T00:00:00Z");
+        tweetRepository.save(Arrays.asList(recent, old, older, discarded));
+    }
+
+    @Test
+    public void shouldMoveTweetsOlderThanTheMonthCutoffsInBatches() {
+        assertThat(archiver.archive()).isEqualTo(3);
+        assertThat(archiver.archive()).isZero();
+
+        assertThat(tweetRepository.findAll()).extracting(Tweet::getTweet).containsExactly("recent");
+    }
+
+    @Test
+    public void shouldRestoreArchivedTweetsNewerThanCutoffsMovedBack() {
+        archiver.archive();
+
+        // a month earlier, the cutoffs fall where raising both month settings by one would put them
+        archiver.setClock(Clock.fixed(Instant.parse("2017-05-15T12:00:00Z"), ZoneOffset.UTC));
+
+        assertThat(archiver.restore()).isEqualTo(2);
+        assertThat(tweetRepository.findAll()).extracting(Tweet::getTweet).containsOnly("recent", "old", "discarded");
+        assertThat(tweetService.listAllTweets()).extracting(Tweet::getTweet).containsExactly("recent", "old", "older");
+        assertThat(tweetService.listAllDiscardedTweets()).extracting(Tweet::getTweet).containsExactly("discarded");
+    }
+
+    @Test
+    public void shouldKeepListingArchivedTweetsAfterTheRecentOnes() {
+        archiver.archive();
+
+        assertThat(tweetService.listAllTweets()).extracting(Tweet::getTweet).containsExactly("recent", "old", "older");
+        assertThat(tweetService.listAllDiscardedTweets()).extracting(Tweet::getTweet).containsExactly("discarded");
+
+        List<Tweet> firstPage = tweetService.listTweets(null, 2);
+        Tweet last = firstPage.get(1);
+        List<Tweet> secondPage = tweetService.listTweets(TweetCursor.of(last.getPublicationDate(), last.getId()), 2);
+        assertThat(firstPage).extracting(Tweet::getTweet).containsExactly("recent", "old");
+        assertThat(secondPage).extracting(Tweet::getTweet).containsExactly("older");
+
+        List<Tweet> streamed = new ArrayList<>();
+        tweetService.streamAllTweets(streamed::add);
+        assertThat(streamed).extracting(Tweet::getTweet).containsExactly("recent", "old", "older");
+        assertThat(tweetService.getTweet(older.getId()).getTweet()).isEqualTo("older");
+    }
+
+    @Test
+    public void shouldDiscardAnArchivedTweet() {
+        archiver.archive();
+
+        tweetService.discardTweet(old.getId());
+
+        assertThat(tweetService.listAllTweets()).extracting(Tweet::getTweet).containsExactly("recent", "older");
+        assertThat(tweetService.listAllDiscardedTweets()).extracting(Tweet::getTweet).containsExactly("old", "discarded");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotDiscardAnArchivedDiscardedTweetAgain() {
+        archiver.archive();
+
+        tweetService.discardTweet(discarded.getId());
+    }
+
+    private Tweet published(String text, String publicationDate) {
+        return new Tweet("publisher", text, false, Date.from(Instant.parse(publicationDate)));
+    }
+
+    private Tweet discarded(String text, String discardedDate) {
+        Tweet tweet = new Tweet("publisher", text, true, Date.from(Instant.parse("2015-01-01T00:00:00Z")));
+        tweet.setDiscardedDate(Date.from(Instant.parse(discardedDate)));
+        return tweet;
+    }
+}
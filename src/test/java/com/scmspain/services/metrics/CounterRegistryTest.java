@@ -0,0 +1,92 @@
+package com.scmspain.services.metrics;
+
+import org.hamcrest.CustomTypeSafeMatcher;
+import org.hamcrest.Matcher;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.Delta;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = CounterRegistry.class)
+@TestPropertySource(properties = "tweets.metrics.export-interval-ms=3600000")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class CounterRegistryTest {
+
+    @Autowired
+    private CounterRegistry counterRegistry;
+
+    @MockBean
+    @Qualifier("scm")
+    private MetricWriter metricWriter;
+
+    @Test
+    public void shouldReturnTheSameCounterForAName() {
+        assertThat(counterRegistry.counter("times-published-tweets")).isSameAs(counterRegistry.counter("times-published-tweets"));
+    }
+
+    @Test
+    public void shouldExportOnlyWhatWasCountedSinceTheLastExport() {
+        Counter counter = counterRegistry.counter("times-published-tweets");
+        counter.increment();
+        counter.add(2);
+
+        counterRegistry.export();
+        counter.increment();
+        counterRegistry.export();
+        counterRegistry.export();
+
+        verify(metricWriter).increment(argThat(isDelta("times-published-tweets", 3L)));
+        verify(metricWriter).increment(argThat(isDelta("times-published-tweets", 1L)));
+        verifyNoMoreInteractions(metricWriter);
+    }
+
+    @Test
+    public void shouldRetryAFailedExport() {
+        counterRegistry.counter("times-queried-tweets").increment();
+        doThrow(new IllegalStateException("ex")).doNothing().when(metricWriter).increment(any());
+
+        counterRegistry.export();
+        counterRegistry.export();
+
+        verify(metricWriter, times(2)).increment(argThat(isDelta("times-queried-tweets", 1L)));
+    }
+
+    @Test
+    public void shouldPublishTotalsAsActuatorMetrics() {
+        counterRegistry.counter("times-discarded-tweets").add(2);
+        counterRegistry.export();
+        counterRegistry.counter("times-discarded-tweets").increment();
+
+        Collection<Metric<?>> metrics = counterRegistry.metrics();
+
+        assertThat(metrics).hasSize(1);
+        Metric<?> metric = metrics.iterator().next();
+        assertThat(metric.getName()).isEqualTo("times-discarded-tweets");
+        assertThat(metric.getValue()).isEqualTo(3L);
+    }
+
+    private static Matcher<Delta<?>> isDelta(String name, long value) {
+        return new CustomTypeSafeMatcher<Delta<?>>(name + "=" + value) {
+            @Override
+            protected boolean matchesSafely(Delta<?> delta) {
+                return name.equals(delta.getName()) && delta.getValue().longValue() == value;
+            }
+        };
+    }
+}
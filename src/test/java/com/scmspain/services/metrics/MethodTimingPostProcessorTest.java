@@ -0,0 +1,48 @@
+package com.scmspain.services.metrics;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.stereotype.Service;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {MethodTimingPostProcessor.class, TimerRegistry.class,
+        MethodTimingPostProcessorTest.GreetingService.class})
+@TestPropertySource(properties = "tweets.metrics.latency-interval-ms=3600000")
+public class MethodTimingPostProcessorTest {
+
+    @Autowired
+    private GreetingService greetingService;
+    @Autowired
+    private TimerRegistry timerRegistry;
+
+    @MockBean
+    @Qualifier("scm")
+    private MetricWriter metricWriter;
+
+    @Test
+    public void shouldTimeServiceMethods() {
+        assertThat(greetingService.greet("Guybrush")).isEqualTo("Hello Guybrush");
+        greetingService.toString();
+
+        timerRegistry.rollIntervals();
+
+        assertThat(timerRegistry.timer("service.GreetingService.greet").getSnapshot().getCount()).isEqualTo(1);
+        assertThat(timerRegistry.metrics()).extracting("name").doesNotContain("timer.service.GreetingService.toString.count");
+    }
+
+    @Service
+    public static class GreetingService {
+        public String greet(String name) {
+            return "Hello " + name;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.scmspain.services.metrics;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TimerRegistry.class)
+@TestPropertySource(properties = "tweets.metrics.latency-interval-ms=3600000")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class TimerRegistryTest {
+
+    @Autowired
+    private TimerRegistry timerRegistry;
+
+    @MockBean
+    @Qualifier("scm")
+    private MetricWriter metricWriter;
+
+    @Test
+    public void shouldComputePercentilesOfTheLastInterval() {
+        Timer timer = timerRegistry.timer("service.TweetService.listAllTweets");
+        for (int millis = 1; millis <= 100; millis++) {
+            timer.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        timerRegistry.rollIntervals();
+
+        TimerSnapshot snapshot = timer.getSnapshot();
+        assertThat(snapshot.getCount()).isEqualTo(100);
+        assertThat(snapshot.getP50()).isCloseTo(50, within(1.0));
+        assertThat(snapshot.getP95()).isCloseTo(95, within(1.0));
+        assertThat(snapshot.getP99()).isCloseTo(99, within(1.0));
+        assertThat(snapshot.getMax()).isCloseTo(100, within(1.0));
+    }
+
+    @Test
+    public void shouldStartEveryIntervalEmpty() {
+        Timer timer = timerRegistry.timer("service.TweetService.listAllTweets");
+        timer.record(TimeUnit.MILLISECONDS.toNanos(5));
+
+        timerRegistry.rollIntervals();
+        timerRegistry.rollIntervals();
+
+        assertThat(timer.getSnapshot().getCount()).isZero();
+        assertThat(timer.getSnapshot().getMax()).isZero();
+    }
+
+    @Test
+    public void shouldPublishStatisticsAsActuatorAndJmxMetrics() {
+        timerRegistry.timer("repository.TweetRepository.findOne").record(TimeUnit.MILLISECONDS.toNanos(2));
+
+        timerRegistry.rollIntervals();
+
+        Map<String, Number> metrics = new HashMap<>();
+        for (Metric<?> metric : timerRegistry.metrics()) {
+            metrics.put(metric.getName(), metric.getValue());
+        }
+        assertThat(metrics).containsOnlyKeys(
+                "timer.repository.TweetRepository.findOne.count",
+                "timer.repository.TweetRepository.findOne.p50",
+                "timer.repository.TweetRepository.findOne.p95",
+                "timer.repository.TweetRepository.findOne.p99",
+                "timer.repository.TweetRepository.findOne.max");
+        assertThat(metrics.get("timer.repository.TweetRepository.findOne.count")).isEqualTo(1L);
+        verify(metricWriter, times(5)).set(any());
+    }
+}
@@ -0,0 +1,118 @@
+package com.scmspain.services.ratelimit;
+
+import com.scmspain.services.metrics.CounterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.metrics.writer.Delta;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {PublisherRateLimiter.class, CounterRegistry.class})
+@TestPropertySource(properties = {"tweets.rate-limit.enabled=true", "tweets.rate-limit.tweets-per-second=0.5",
+        "tweets.rate-limit.burst=2", "tweets.rate-limit.stripes=4", "tweets.metrics.export-interval-ms=3600000"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class PublisherRateLimiterTest {
+
+    private static final String PUBLISHER = "Guybrush Threepwood";
+
+    @Autowired
+    private PublisherRateLimiter rateLimiter;
+    @Autowired
+    private CounterRegistry counterRegistry;
+
+    @MockBean
+    @Qualifier("scm")
+    private MetricWriter metricWriter;
+
+    private AtomicLong now = new AtomicLong();
+
+    @Before
+    public void setUp() {
+        rateLimiter.setNanoClock(now::get);
+    }
+
+    @Test
+    public void shouldRejectTweetsOverTheBurstUntilTokensAreBack() {
+        rateLimiter.acquire(PUBLISHER, 2);
+
+        assertThatThrownBy(() -> rateLimiter.acquire(PUBLISHER, 1))
+                .isInstanceOf(RateLimitExceededException.class)
+                .hasFieldOrPropertyWithValue("retryAfterSeconds", 2L);
+        rateLimiter.acquire("Elaine Marley", 1);
+
+        advanceSeconds(2);
+        rateLimiter.acquire(PUBLISHER, 1);
+        assertThatThrownBy(() -> rateLimiter.acquire(PUBLISHER, 1)).isInstanceOf(RateLimitExceededException.class);
+    }
+
+    @Test
+    public void shouldGiveBackTheTokensOfEveryPublisherWhenOneOfThemIsOverTheLimit() {
+        rateLimiter.acquire("Elaine Marley", 2);
+        Map<String, Integer> tweetsByPublisher = new LinkedHashMap<>();
+        tweetsByPublisher.put(PUBLISHER, 2);
+        tweetsByPublisher.put("Elaine Marley", 1);
+
+        assertThatThrownBy(() -> rateLimiter.acquire(tweetsByPublisher)).isInstanceOf(RateLimitExceededException.class);
+
+        rateLimiter.acquire(PUBLISHER, 2);
+        assertThat(counterRegistry.counter("times-rate-limited-tweets").count()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldRejectMoreTweetsAtOnceThanTheBurst() {
+        assertThatThrownBy(() -> rateLimiter.acquire(PUBLISHER, 3)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldEvictOnlyTheBucketsThatAreFullAgain() {
+        rateLimiter.acquire(PUBLISHER, 2);
+        rateLimiter.acquire("Elaine Marley", 1);
+        advanceSeconds(2);
+
+        rateLimiter.evictFullBuckets();
+
+        assertThat(rateLimiter.size()).isEqualTo(1);
+        assertThatThrownBy(() -> rateLimiter.acquire(PUBLISHER, 2)).isInstanceOf(RateLimitExceededException.class);
+        advanceSeconds(2);
+        rateLimiter.evictFullBuckets();
+        assertThat(rateLimiter.size()).isZero();
+        rateLimiter.acquire("Elaine Marley", 2);
+    }
+
+    @Test
+    public void shouldExportRejectedTweetsThroughTheScmMetricWriter() throws Exception {
+        rateLimiter.acquire(PUBLISHER, 2);
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> rateLimiter.acquire(PUBLISHER, 1)).isInstanceOf(RateLimitExceededException.class);
+        }
+
+        counterRegistry.stop();
+
+        ArgumentCaptor<Delta> delta = ArgumentCaptor.forClass(Delta.class);
+        verify(metricWriter).increment(delta.capture());
+        assertThat(delta.getValue().getName()).isEqualTo("times-rate-limited-tweets");
+        assertThat(delta.getValue().getValue()).isEqualTo(3L);
+    }
+
+    private void advanceSeconds(long seconds) {
+        now.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+}
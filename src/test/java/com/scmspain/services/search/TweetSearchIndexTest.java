@@ -0,0 +1,133 @@
+package com.scmspain.services.search;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.events.TweetDiscardedEvent;
+import com.scmspain.events.TweetPublishedEvent;
+import com.scmspain.repositories.TweetRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.when;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TweetSearchIndex.class)
+@TestPropertySource(properties = {"tweets.search.enabled=true", "tweets.search.rebuild-threads=2", "tweets.search.rebuild-chunk-size=2",
+        "tweets.search.compaction-threshold=2"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class TweetSearchIndexTest {
+
+    @Autowired
+    private TweetSearchIndex searchIndex;
+
+    @MockBean
+    private TweetRepository tweetRepository;
+    @MockBean
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void shouldSplitTextIntoLowerCaseWords() {
+        assertThat(TweetSearchIndex.terms("I am Guybrush Threepwood, mighty pirate! Mighty? 3 héroes"))
+                .containsExactly("i", "am", "guybrush", "threepwood", "mighty", "pirate", "3", "héroes");
+        assertThat(TweetSearchIndex.terms(" ... ")).isEmpty();
+    }
+
+    @Test
+    public void shouldRebuildFromTheRepositoryInChunks() {
+        when(tweetRepository.findMinId()).thenReturn(1L);
+        when(tweetRepository.findMaxId()).thenReturn(5L);
+        when(tweetRepository.findPublishedInIdRange(anyLong(), anyLong())).thenReturn(emptyList());
+        when(tweetRepository.findPublishedInIdRange(1L, 3L)).thenReturn(Arrays.asList(
+                tweet(1L, "guybrush", "mighty pirate"), tweet(2L, "lechuck", "ghost pirate")));
+        when(tweetRepository.findPublishedInIdRange(5L, 7L)).thenReturn(Collections.singletonList(
+                tweet(5L, "guybrush", "Mighty pirate again")));
+
+        searchIndex.rebuild();
+
+        assertThat(searchIndex.search(singleton("pirate"), null, null, 10)).containsExactly(5L, 2L, 1L);
+        assertThat(searchIndex.search(Arrays.asList("mighty", "pirate"), null, null, 10)).containsExactly(5L, 1L);
+        assertThat(searchIndex.search(emptyList(), "guybrush", null, 10)).containsExactly(5L, 1L);
+        assertThat(searchIndex.search(singleton("pirate"), "lechuck", null, 10)).containsExactly(2L);
+        assertThat(searchIndex.search(singleton("monkey"), null, null, 10)).isEmpty();
+    }
+
+    @Test
+    public void shouldPageNewestFirst() {
+        for (long id = 1; id <= 5; id++) {
+            searchIndex.onPublished(new TweetPublishedEvent(tweet(id, "guybrush", "pirate")));
+        }
+
+        assertThat(searchIndex.search(singleton("pirate"), null, null, 2)).containsExactly(5L, 4L);
+        assertThat(searchIndex.search(singleton("pirate"), null, 4L, 2)).containsExactly(3L, 2L);
+        assertThat(searchIndex.search(singleton("pirate"), null, 2L, 2)).containsExactly(1L);
+    }
+
+    @Test
+    public void shouldNotFindDiscardedTweetsBeforeNorAfterCompaction() {
+        for (long id = 1; id <= 4; id++) {
+            searchIndex.onPublished(new TweetPublishedEvent(tweet(id, "guybrush", "pirate")));
+        }
+
+        searchIndex.onDiscarded(new TweetDiscardedEvent(3L, new Date()));
+        assertThat(searchIndex.search(singleton("pirate"), null, null, 10)).containsExactly(4L, 2L, 1L);
+
+        searchIndex.onDiscarded(new TweetDiscardedEvent(1L, new Date()));
+        assertThat(searchIndex.search(singleton("pirate"), null, null, 10)).containsExactly(4L, 2L);
+        assertThat(searchIndex.search(emptyList(), "guybrush", null, 10)).containsExactly(4L, 2L);
+    }
+
+    @Test
+    public void shouldRejectSearchesUntilTheBackgroundRebuildCompletes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(tweetRepository.findMinId()).thenAnswer(invocation -> {
+            release.await();
+            return 1L;
+        });
+        when(tweetRepository.findMaxId()).thenReturn(1L);
+        when(tweetRepository.findPublishedInIdRange(1L, 3L)).thenReturn(Collections.singletonList(
+                tweet(1L, "guybrush", "mighty pirate")));
+        TweetSearchIndex backgroundIndex = new TweetSearchIndex(tweetRepository, transactionManager, true, 2, 2, 2, true);
+
+        backgroundIndex.start();
+        try {
+            backgroundIndex.search(singleton("pirate"), null, null, 10);
+            fail("Search should have been rejected");
+        } catch (RejectedExecutionException ex) {
+            assertThat(ex).hasMessageContaining("rebuilt");
+        }
+
+        release.countDown();
+        long[] ids = null;
+        while (ids == null) {
+            try {
+                ids = backgroundIndex.search(singleton("pirate"), null, null, 10);
+            } catch (RejectedExecutionException ex) {
+                Thread.sleep(5);
+            }
+        }
+        assertThat(ids).containsExactly(1L);
+    }
+
+    private static Tweet tweet(Long id, String publisher, String text) {
+        Tweet tweet = new Tweet(publisher, text, false, new Date());
+        tweet.setId(id);
+        return tweet;
+    }
+}
@@ -0,0 +1,120 @@
+package com.scmspain.services.timeline;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.events.TweetDiscardedEvent;
+import com.scmspain.events.TweetPublishedEvent;
+import com.scmspain.repositories.TweetRepository;
+import com.scmspain.services.TweetCursor;
+import com.scmspain.services.archive.TweetArchive;
+import com.scmspain.services.metrics.CounterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {PublisherTimelineCache.class, CounterRegistry.class})
+@TestPropertySource(properties = {"tweets.publisher-cache.enabled=true", "tweets.publisher-cache.max-size=3",
+        "tweets.publisher-cache.max-publishers=2"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class PublisherTimelineCacheTest {
+
+    @Autowired
+    private PublisherTimelineCache publisherCache;
+    @Autowired
+    private CounterRegistry counterRegistry;
+
+    @MockBean
+    @Qualifier("scm")
+    private MetricWriter metricWriter;
+    @MockBean
+    private TweetRepository tweetRepository;
+    @MockBean
+    private TweetArchive archive;
+
+    @Test
+    public void shouldServePagesOfThePublisherLatestTweets() {
+        List<Tweet> stored = tweets("guybrush", 4);
+        when(tweetRepository.findPublishedByPublisher("guybrush", new PageRequest(0, 4))).thenReturn(stored);
+        Tweet first = stored.get(0);
+
+        assertThat(publisherCache.publishedPage("guybrush", null, 2).get()).containsExactly(stored.get(0), stored.get(1));
+        assertThat(publisherCache.publishedPage("guybrush", TweetCursor.of(first.getPublicationDate(), first.getId()), 2).get())
+                .containsExactly(stored.get(1), stored.get(2));
+        assertThat(publisherCache.publishedPage("guybrush", null, 4)).isEmpty();
+
+        verify(tweetRepository, times(1)).findPublishedByPublisher(eq("guybrush"), any());
+        assertThat(counterRegistry.counter("publisher-cache-hits").count()).isEqualTo(2);
+        assertThat(counterRegistry.counter("publisher-cache-misses").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldAddPublishedTweetsToTheirPublisherOnly() {
+        when(tweetRepository.findPublishedByPublisher(any(), any())).thenReturn(emptyList());
+        publisherCache.publishedPage("guybrush", null, 3);
+        publisherCache.publishedPage("lechuck", null, 3);
+
+        publisherCache.onPublished(new TweetPublishedEvent(tweet(1L, "guybrush", new Date())));
+
+        assertThat(publisherCache.publishedPage("guybrush", null, 3).get()).extracting(Tweet::getId).containsExactly(1L);
+        assertThat(publisherCache.publishedPage("lechuck", null, 3).get()).isEmpty();
+    }
+
+    @Test
+    public void shouldDropDiscardedTweets() {
+        List<Tweet> stored = tweets("guybrush", 2);
+        when(tweetRepository.findPublishedByPublisher(eq("guybrush"), any())).thenReturn(stored);
+        publisherCache.publishedPage("guybrush", null, 3);
+
+        publisherCache.onDiscarded(new TweetDiscardedEvent(stored.get(0).getId(), new Date()));
+
+        assertThat(publisherCache.publishedPage("guybrush", null, 3).get()).containsExactly(stored.get(1));
+    }
+
+    @Test
+    public void shouldEvictTheLeastRecentlyReadPublisher() {
+        when(tweetRepository.findPublishedByPublisher(any(), any())).thenReturn(emptyList());
+        publisherCache.publishedPage("guybrush", null, 3);
+        publisherCache.publishedPage("lechuck", null, 3);
+        publisherCache.publishedPage("guybrush", null, 3);
+        publisherCache.publishedPage("elaine", null, 3);
+
+        publisherCache.publishedPage("guybrush", null, 3);
+        publisherCache.publishedPage("lechuck", null, 3);
+
+        verify(tweetRepository, times(1)).findPublishedByPublisher(eq("guybrush"), any());
+        verify(tweetRepository, times(2)).findPublishedByPublisher(eq("lechuck"), any());
+    }
+
+    private static List<Tweet> tweets(String publisher, int numberOfTweets) {
+        List<Tweet> tweetList = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int x = 0; x < numberOfTweets; x++) {
+            tweetList.add(tweet((long) numberOfTweets - x, publisher, new Date(now - x * 1000L)));
+        }
+        return tweetList;
+    }
+
+    private static Tweet tweet(Long id, String publisher, Date date) {
+        Tweet tweet = new Tweet(publisher, String.format("tweet number: %d", id), false, date);
+        tweet.setId(id);
+        return tweet;
+    }
+}
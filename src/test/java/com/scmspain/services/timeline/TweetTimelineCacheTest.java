@@ -0,0 +1,155 @@
+package com.scmspain.services.timeline;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.events.TweetDiscardedEvent;
+import com.scmspain.events.TweetPublishedEvent;
+import com.scmspain.repositories.TweetRepository;
+import com.scmspain.services.TweetCursor;
+import com.scmspain.services.archive.TweetArchive;
+import com.scmspain.services.metrics.CounterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {TweetTimelineCache.class, CounterRegistry.class})
+@TestPropertySource(properties = {"tweets.timeline-cache.enabled=true", "tweets.timeline-cache.max-size=3"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class TweetTimelineCacheTest {
+
+    @Autowired
+    private TweetTimelineCache timelineCache;
+    @Autowired
+    private CounterRegistry counterRegistry;
+
+    @MockBean
+    @Qualifier("scm")
+    private MetricWriter metricWriter;
+    @MockBean
+    private TweetRepository tweetRepository;
+    @MockBean
+    private TweetArchive archive;
+
+    @Test
+    public void shouldServeAllPublishedTweetsWhenTheyFitInTheCache() {
+        List<Tweet> stored = tweets(2, false);
+        when(tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(new PageRequest(0, 4))).thenReturn(stored);
+
+        assertThat(timelineCache.allPublished()).contains(stored);
+        assertThat(timelineCache.allPublished()).contains(stored);
+
+        verify(tweetRepository, times(1)).findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(any());
+        assertThat(counterRegistry.counter("timeline-cache-hits").count()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldMissAllPublishedTweetsWhenTheyDoNotFitInTheCache() {
+        when(tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(any())).thenReturn(tweets(4, false));
+
+        assertThat(timelineCache.allPublished()).isEmpty();
+        assertThat(timelineCache.publishedPage(null, 3)).isPresent();
+        assertThat(timelineCache.publishedPage(null, 4)).isEmpty();
+
+        assertThat(counterRegistry.counter("timeline-cache-misses").count()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldServePagesAfterACursor() {
+        List<Tweet> stored = tweets(3, false);
+        when(tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(any())).thenReturn(stored);
+        Tweet first = stored.get(0);
+
+        List<Tweet> page = timelineCache.publishedPage(TweetCursor.of(first.getPublicationDate(), first.getId()), 5).get();
+
+        assertThat(page).containsExactly(stored.get(1), stored.get(2));
+    }
+
+    @Test
+    public void shouldAddPublishedTweetsAndEvictTheOldest() {
+        List<Tweet> stored = tweets(3, false);
+        when(tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(any())).thenReturn(stored);
+        timelineCache.allPublished();
+        Tweet newest = tweet(10L, new Date(stored.get(0).getPublicationDate().getTime() + 1000), false);
+
+        timelineCache.onPublished(new TweetPublishedEvent(newest));
+
+        assertThat(timelineCache.allPublished()).isEmpty();
+        assertThat(timelineCache.publishedPage(null, 3).get()).extracting(Tweet::getId)
+                .containsExactly(10L, stored.get(0).getId(), stored.get(1).getId());
+    }
+
+    @Test
+    public void shouldMoveDiscardedTweetsToTheDiscardedTimeline() {
+        List<Tweet> stored = tweets(2, false);
+        when(tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(any())).thenReturn(stored);
+        when(tweetRepository.findAllByDiscardedTrueOrderByDiscardedDateDescIdDesc(any())).thenReturn(emptyList());
+        timelineCache.allPublished();
+        timelineCache.allDiscarded();
+        Long discardedId = stored.get(1).getId();
+        Date discardedDate = new Date();
+
+        timelineCache.onDiscarded(new TweetDiscardedEvent(discardedId, discardedDate));
+
+        assertThat(timelineCache.allPublished().get()).extracting(Tweet::getId).containsExactly(stored.get(0).getId());
+        List<Tweet> discarded = timelineCache.allDiscarded().get();
+        assertThat(discarded).extracting(Tweet::getId).containsExactly(discardedId);
+        assertThat(discarded.get(0).getDiscarded()).isTrue();
+        assertThat(discarded.get(0).getDiscardedDate()).isEqualTo(discardedDate);
+    }
+
+    @Test
+    public void shouldReloadTheDiscardedTimelineWhenTheDiscardedTweetIsNotCached() {
+        when(tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(any())).thenReturn(tweets(1, false));
+        when(tweetRepository.findAllByDiscardedTrueOrderByDiscardedDateDescIdDesc(any())).thenReturn(emptyList());
+        timelineCache.allPublished();
+        timelineCache.allDiscarded();
+
+        timelineCache.onDiscarded(new TweetDiscardedEvent(42L, new Date()));
+        timelineCache.allDiscarded();
+
+        verify(tweetRepository, times(2)).findAllByDiscardedTrueOrderByDiscardedDateDescIdDesc(any());
+    }
+
+    @Test
+    public void shouldNotLoseTweetsPublishedWhileLoading() {
+        when(tweetRepository.findAllByDiscardedFalseOrderByPublicationDateDescIdDesc(any())).thenAnswer(invocation -> {
+            timelineCache.onPublished(new TweetPublishedEvent(tweet(1L, new Date(), false)));
+            return emptyList();
+        });
+
+        assertThat(timelineCache.allPublished()).isEmpty();
+        assertThat(counterRegistry.counter("timeline-cache-misses").count()).isEqualTo(1);
+    }
+
+    private static List<Tweet> tweets(int numberOfTweets, boolean discarded) {
+        List<Tweet> tweetList = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int x = 0; x < numberOfTweets; x++) {
+            tweetList.add(tweet((long) numberOfTweets - x, new Date(now - x * 1000L), discarded));
+        }
+        return tweetList;
+    }
+
+    private static Tweet tweet(Long id, Date date, boolean discarded) {
+        Tweet tweet = new Tweet(String.format("publisher%d", id), String.format("tweet number: %d", id), discarded, date);
+        tweet.setId(id);
+        return tweet;
+    }
+}
@@ -0,0 +1,184 @@
+package com.scmspain.services.writebehind;
+
+import com.scmspain.entities.Tweet;
+import com.scmspain.repositories.TweetRepository;
+import com.scmspain.services.metrics.CounterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.writer.MetricWriter;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {WriteBehindPublisher.class, CounterRegistry.class})
+@TestPropertySource(properties = {"tweets.write-behind.enabled=true", "tweets.write-behind.queue-capacity=1",
+        "tweets.write-behind.flush-size=2", "tweets.write-behind.flush-interval-ms=20",
+        "tweets.write-behind.max-retries=2", "tweets.write-behind.retry-backoff-ms=1",
+        "tweets.write-behind.shutdown-timeout-ms=500",
+        "tweets.write-behind.dead-letter-file=${java.io.tmpdir}/write-behind-test/dead-letter.jsonl",
+        "tweets.metrics.export-interval-ms=3600000"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class WriteBehindPublisherTest {
+
+    @Autowired
+    private WriteBehindPublisher writeBehindPublisher;
+    @Autowired
+    private CounterRegistry counterRegistry;
+    @Value("${tweets.write-behind.dead-letter-file}")
+    private String deadLetterFile;
+
+    @MockBean
+    private TweetRepository tweetRepository;
+    @MockBean
+    private PlatformTransactionManager transactionManager;
+    @MockBean
+    @Qualifier("scm")
+    private MetricWriter metricWriter;
+
+    @Before
+    public void setUp() throws Exception {
+        Files.deleteIfExists(Paths.get(deadLetterFile));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldSaveEveryQueuedTweetInBatchesBeforeStopping() throws Exception {
+        List<List<Tweet>> batches = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            batches.add(new ArrayList<>((List<Tweet>) invocation.getArguments()[0]));
+            return null;
+        }).when(tweetRepository).save(any(Iterable.class));
+
+        int queued = 0;
+        while (queued < 5) {
+            try {
+                writeBehindPublisher.enqueue(new Tweet("publisher", "tweet", false, new Date()));
+                queued++;
+            } catch (RejectedExecutionException ex) {
+                Thread.sleep(5);
+            }
+        }
+        writeBehindPublisher.stop();
+
+        assertThat(batches.stream().mapToInt(List::size).sum()).isEqualTo(5);
+        assertThat(batches.stream().mapToInt(List::size).max().getAsInt()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    public void shouldRejectTweetsWhenTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(tweetRepository).save(any(Iterable.class));
+
+        int accepted = 0;
+        try {
+            while (accepted < 10) {
+                writeBehindPublisher.enqueue(new Tweet("publisher", "tweet", false, new Date()));
+                accepted++;
+            }
+        } catch (RejectedExecutionException ex) {
+            assertThat(ex.getMessage()).isNotEmpty();
+        } finally {
+            release.countDown();
+        }
+
+        assertThat(accepted).isLessThanOrEqualTo(3);
+        writeBehindPublisher.stop();
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void shouldRejectTweetsOnceStopped() throws Exception {
+        writeBehindPublisher.stop();
+
+        writeBehindPublisher.enqueue(new Tweet("publisher", "tweet", false, new Date()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldRetryABatchThatFailsToSave() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        List<Tweet> saved = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            if (attempts.incrementAndGet() <= 2) {
+                throw new IllegalStateException("Database unavailable");
+            }
+            saved.addAll((List<Tweet>) invocation.getArguments()[0]);
+            return null;
+        }).when(tweetRepository).save(any(Iterable.class));
+
+        writeBehindPublisher.enqueue(new Tweet("publisher", "tweet", false, new Date()));
+        writeBehindPublisher.stop();
+
+        assertThat(saved).hasSize(1);
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(new File(deadLetterFile)).doesNotExist();
+        assertThat(counterRegistry.counter("write-behind-failed-tweets").count()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldWriteTheTweetsOfABatchThatKeepsFailingToTheDeadLetterFile() throws Exception {
+        doThrow(new IllegalStateException("Database unavailable")).when(tweetRepository).save(any(Iterable.class));
+
+        writeBehindPublisher.enqueue(new Tweet("Guybrush Threepwood", "Look behind you, a three-headed monkey!", false, new Date(1000)));
+        writeBehindPublisher.stop();
+
+        verify(tweetRepository, times(3)).save(any(Iterable.class));
+        assertThat(Files.readAllLines(Paths.get(deadLetterFile), StandardCharsets.UTF_8)).containsExactly(
+                "{\"publisher\":\"Guybrush Threepwood\",\"tweet\":\"Look behind you, a three-headed monkey!\",\"publicationDate\":1000}");
+        assertThat(counterRegistry.counter("write-behind-failed-tweets").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldWriteTheTweetsStillQueuedToTheDeadLetterFileWhenTheWriterDoesNotFinishInTime() throws Exception {
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            saving.countDown();
+            // a stuck database call does not see the interrupt
+            while (release.getCount() > 0) {
+                LockSupport.parkNanos(1000000);
+            }
+            return null;
+        }).when(tweetRepository).save(any(Iterable.class));
+
+        try {
+            writeBehindPublisher.enqueue(new Tweet("Guybrush Threepwood", "Saved at last", false, new Date(1000)));
+            saving.await();
+            writeBehindPublisher.enqueue(new Tweet("LeChuck", "Never saved", false, new Date(2000)));
+            writeBehindPublisher.stop();
+
+            assertThat(Files.readAllLines(Paths.get(deadLetterFile), StandardCharsets.UTF_8)).containsExactly(
+                    "{\"publisher\":\"LeChuck\",\"tweet\":\"Never saved\",\"publicationDate\":2000}");
+            assertThat(counterRegistry.counter("write-behind-failed-tweets").count()).isEqualTo(1);
+        } finally {
+            release.countDown();
+        }
+    }
+}
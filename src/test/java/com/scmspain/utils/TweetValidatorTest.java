@@ -8,11 +8,21 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import java.util.Date;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(classes = TweetValidator.class)
 public class TweetValidatorTest {
 
+    private static final String HTTP_REGEX = "(https?)://[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|]";
+    private static final String[] TEXT_PIECES = {
+            "http://", "https://", "http", "https", "://", "h", "s", ":", "/", " ", "\t", "\n",
+            "a", "Z", "7", "-", "+", "&", "@", "#", "%", "=", "~", "_", "|",
+            "?", "!", ",", ".", ";", "\u00f1", "\u20ac", "\ud83d\ude00", "www.example.com", "foo/bar?x=1."
+    };
+
     @Autowired
     TweetValidator tweetValidator;
 
@@ -60,6 +70,41 @@ public class TweetValidatorTest {
         tweetValidator.validate(tweet);
     }
 
+    @Test
+    public void shouldNotCountLinks() throws Exception {
+        assertThat(TweetValidator.effectiveLength("Hey http://foogle.co", Integer.MAX_VALUE)).isEqualTo(4);
+        assertThat(TweetValidator.effectiveLength("Hey https://foogle.co/a?b=c. Bye", Integer.MAX_VALUE)).isEqualTo(9);
+        assertThat(TweetValidator.effectiveLength("Hey http://...", Integer.MAX_VALUE)).isEqualTo(14);
+        assertThat(TweetValidator.effectiveLength("Hey HTTP://foogle.co", Integer.MAX_VALUE)).isEqualTo(20);
+    }
+
+    @Test
+    public void shouldStopCountingAtTheLimit() throws Exception {
+        assertThat(TweetValidator.effectiveLength("0123456789", 4)).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldMeasureLikeTheLinkRegexOnRandomTexts() throws Exception {
+        Random random = new Random(20170401L);
+        for (int run = 0; run < 20000; run++) {
+            String text = randomText(random);
+
+            int expected = text.replaceAll(HTTP_REGEX, "").length();
+
+            assertThat(TweetValidator.effectiveLength(text, Integer.MAX_VALUE)).as(text).isEqualTo(expected);
+            assertThat(TweetValidator.effectiveLength(text, 140)).as(text).isEqualTo(Math.min(expected, 140));
+        }
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int pieces = random.nextInt(40);
+        for (int piece = 0; piece < pieces; piece++) {
+            text.append(TEXT_PIECES[random.nextInt(TEXT_PIECES.length)]);
+        }
+        return text.toString();
+    }
+
 
 
 }